@@ -0,0 +1,52 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.benchmarks;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks with the JMH command line. Unless the arguments
+ * say otherwise, the results are written in JSON to jmh-result.json,
+ * so that the results of different commits can be compared.
+ *
+ * @author Alexey Loubyansky
+ */
+public class BenchmarkMain {
+
+    private static final String RESULT_FORMAT = "-rf";
+
+    public static void main(String[] args) throws Exception {
+        for(String arg : args) {
+            if(RESULT_FORMAT.equals(arg)) {
+                Main.main(args);
+                return;
+            }
+        }
+        // JMH names the result file after the format unless -rff is given
+        final String[] jmhArgs = new String[args.length + 2];
+        jmhArgs[0] = RESULT_FORMAT;
+        jmhArgs[1] = "json";
+        System.arraycopy(args, 0, jmhArgs, 2, args.length);
+        Main.main(jmhArgs);
+    }
+}
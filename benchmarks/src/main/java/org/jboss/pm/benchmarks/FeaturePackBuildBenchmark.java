@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.pm.build.FeaturePackBuild;
+import org.jboss.pm.build.FeaturePackBuildReport;
+import org.jboss.pm.build.PMBuildException;
+import org.jboss.pm.def.InstallationDef;
+import org.jboss.pm.def.InstallationDefException;
+import org.jboss.pm.util.IoUtils;
+import org.jboss.pm.wildfly.def.WFFeaturePackDefBuilder;
+import org.jboss.pm.wildfly.def.WFInstallationDefBuilder;
+import org.jboss.pm.wildfly.def.WFPackageDefBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds feature packs with {@link FeaturePackBuild} from an installation
+ * of synthetic files, each feature pack made of a package of its own directory.
+ * The work directory is deleted after each build, so every build is a full one.
+ *
+ * @author Alexey Loubyansky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FeaturePackBuildBenchmark {
+
+    @Param({"1", "4"})
+    int featurePacks;
+
+    @Param({"1000"})
+    int files;
+
+    @Param({"1024", "65536"})
+    int fileSize;
+
+    @Param({SyntheticContent.TEXT, SyntheticContent.RANDOM})
+    String compressibility;
+
+    @Param({"1", "4"})
+    int compressionThreads;
+
+    private File dir;
+    private File home;
+    private File workDir;
+    private InstallationDef installation;
+
+    @Setup
+    public void setup() throws IOException, InstallationDefException {
+        dir = Files.createTempDirectory("pm-bench").toFile();
+        home = new File(dir, "home");
+        workDir = new File(dir, "work");
+        final WFInstallationDefBuilder builder = WFInstallationDefBuilder.newInstance();
+        builder.setModulesPath("modules");
+        for(int i = 0; i < featurePacks; ++i) {
+            final String name = "fp" + i;
+            SyntheticContent.writeFiles(new File(home, name).toPath(), files / featurePacks, fileSize, compressibility);
+            final WFFeaturePackDefBuilder fpBuilder = new WFFeaturePackDefBuilder("org.jboss.pm.benchmarks", name, "1.0", builder);
+            final WFPackageDefBuilder pkgBuilder = new WFPackageDefBuilder(name);
+            pkgBuilder.addRelativePath(name);
+            fpBuilder.addPackage(pkgBuilder);
+            builder.addFeaturePack(fpBuilder);
+        }
+        installation = builder.build(home);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteWorkDir() {
+        IoUtils.recursiveDelete(workDir);
+    }
+
+    @TearDown
+    public void tearDown() {
+        IoUtils.recursiveDelete(dir);
+    }
+
+    @Benchmark
+    public FeaturePackBuildReport build() throws PMBuildException {
+        return new FeaturePackBuild(installation, home, workDir)
+                .setParallelism(featurePacks)
+                .setCompressionThreads(compressionThreads)
+                .buildFeaturePacks();
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jboss.pm.wildfly.def.WFFeaturePackDefBuilder;
+import org.jboss.pm.wildfly.def.WFInstallationDefBuilder;
+import org.jboss.pm.wildfly.def.WFModulesDefBuilder;
+import org.jboss.pm.wildfly.def.WFPackageDefBuilder;
+
+/**
+ * Generates a fake installation laid out like WildFly: module.xml files and
+ * jars of the modules spread over the layers, bin, standalone and domain
+ * directories, jboss-modules.jar and the product module. The content only
+ * depends on the settings and the seed, so the same installation can be
+ * generated anywhere without downloading a real one.
+ *
+ * Each module has the main slot and, depending on the number of slots,
+ * several versioned slots. Its dependencies are on the modules generated
+ * before it, some of them optional, so the module graph has no cycles.
+ *
+ * The installation can be generated from the command line with
+ *
+ *     InstallationGenerator &lt;home&gt; [modules [layers [slots [jar-size]]]]
+ *
+ * @author Alexey Loubyansky
+ */
+public class InstallationGenerator {
+
+    static final String LAYERS_DIR = "modules/system/layers/";
+    static final String BASE_LAYER = "base";
+
+    static final String PRODUCT_SLOT = "synthetic";
+    static final String PRODUCT_VERSION = "1.0.0.Final";
+
+    private static final String[] GROUPS = new String[] {"org.jboss.as", "org.wildfly.extension", "io.undertow",
+            "org.hibernate", "org.infinispan", "org.apache.cxf", "org.jboss.resteasy", "org.jgroups", "javax.api"};
+
+    private int modules = 500;
+    private int layers = 1;
+    private int slots = 1;
+    private int jarSize = 32768;
+    private int dependencies = 4;
+    private long seed = SyntheticContent.SEED;
+
+    /**
+     * Number of modules, the product module excluded, each with one or more slots.
+     *
+     * @param modules  number of modules
+     * @return  this generator
+     */
+    public InstallationGenerator setModules(int modules) {
+        if(modules < 1) {
+            throw new IllegalArgumentException("modules must be greater than 0: " + modules);
+        }
+        this.modules = modules;
+        return this;
+    }
+
+    /**
+     * Number of layers the modules are spread over. The first one is the base
+     * layer, the rest are listed in modules/layers.conf.
+     *
+     * @param layers  number of layers
+     * @return  this generator
+     */
+    public InstallationGenerator setLayers(int layers) {
+        if(layers < 1) {
+            throw new IllegalArgumentException("layers must be greater than 0: " + layers);
+        }
+        this.layers = layers;
+        return this;
+    }
+
+    /**
+     * Maximum number of slots of a module. The modules get from 1 to this number of slots.
+     *
+     * @param slots  maximum number of slots of a module
+     * @return  this generator
+     */
+    public InstallationGenerator setSlots(int slots) {
+        if(slots < 1) {
+            throw new IllegalArgumentException("slots must be greater than 0: " + slots);
+        }
+        this.slots = slots;
+        return this;
+    }
+
+    /**
+     * Size of the jar of every module slot. The jars are filled with random bytes,
+     * i.e. they do not deflate, like the real ones.
+     *
+     * @param jarSize  jar size in bytes
+     * @return  this generator
+     */
+    public InstallationGenerator setJarSize(int jarSize) {
+        if(jarSize < 0) {
+            throw new IllegalArgumentException("jarSize must not be negative: " + jarSize);
+        }
+        this.jarSize = jarSize;
+        return this;
+    }
+
+    /**
+     * Maximum number of dependencies of a module.
+     *
+     * @param dependencies  maximum number of dependencies of a module
+     * @return  this generator
+     */
+    public InstallationGenerator setDependencies(int dependencies) {
+        if(dependencies < 0) {
+            throw new IllegalArgumentException("dependencies must not be negative: " + dependencies);
+        }
+        this.dependencies = dependencies;
+        return this;
+    }
+
+    public InstallationGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Generates the installation into the home directory which should not exist or be empty.
+     *
+     * @param home  installation home directory
+     * @throws IOException  in case of a failure
+     */
+    public void generate(Path home) throws IOException {
+        for(int i = 0; i < modules; ++i) {
+            generateModule(home, i);
+        }
+        generateProductModule(home);
+        if(layers > 1) {
+            final StringBuilder buf = new StringBuilder("layers=");
+            for(int i = layers - 1; i > 0; --i) {
+                buf.append(getLayer(i));
+                if(i > 1) {
+                    buf.append(',');
+                }
+            }
+            write(home.resolve("modules/layers.conf"), buf.append('\n').toString());
+        }
+
+        final Random random = new Random(seed);
+        write(home.resolve("jboss-modules.jar"), SyntheticContent.bytes(jarSize, SyntheticContent.RANDOM, random));
+        write(home.resolve("LICENSE.txt"), SyntheticContent.bytes(4096, SyntheticContent.TEXT, random));
+        write(home.resolve("README.txt"), SyntheticContent.bytes(2048, SyntheticContent.TEXT, random));
+        write(home.resolve("copyright.txt"), SyntheticContent.bytes(1024, SyntheticContent.TEXT, random));
+        write(home.resolve("docs/schema/jboss-as-config.xsd"), SyntheticContent.bytes(65536, SyntheticContent.TEXT, random));
+        write(home.resolve("welcome-content/index.html"), SyntheticContent.bytes(2048, SyntheticContent.TEXT, random));
+
+        write(home.resolve("bin/product.conf"), "slot=" + PRODUCT_SLOT + '\n');
+        for(String script : new String[] {"standalone", "domain", "jboss-cli", "add-user", "appclient"}) {
+            write(home.resolve("bin/" + script + ".sh"), SyntheticContent.bytes(8192, SyntheticContent.TEXT, random));
+            write(home.resolve("bin/" + script + ".bat"), SyntheticContent.bytes(8192, SyntheticContent.TEXT, random));
+        }
+        write(home.resolve("bin/standalone.conf"), SyntheticContent.bytes(2048, SyntheticContent.TEXT, random));
+        write(home.resolve("bin/domain.conf"), SyntheticContent.bytes(2048, SyntheticContent.TEXT, random));
+
+        for(String config : new String[] {"standalone", "standalone-ha", "standalone-full", "standalone-full-ha"}) {
+            write(home.resolve("standalone/configuration/" + config + ".xml"), SyntheticContent.bytes(32768, SyntheticContent.TEXT, random));
+        }
+        write(home.resolve("standalone/configuration/logging.properties"), SyntheticContent.bytes(2048, SyntheticContent.TEXT, random));
+        Files.createDirectories(home.resolve("standalone/deployments"));
+        write(home.resolve("domain/configuration/domain.xml"), SyntheticContent.bytes(131072, SyntheticContent.TEXT, random));
+        write(home.resolve("domain/configuration/host.xml"), SyntheticContent.bytes(8192, SyntheticContent.TEXT, random));
+    }
+
+    /**
+     * Creates the definition builder of a feature pack of the generated installation
+     * with a package per layer of modules and the packages of the rest of the content,
+     * like the ones of the WildFly feature pack definition. If the artifactId is null
+     * the artifactId and the version are taken from the product module.
+     *
+     * @param groupId  groupId of the feature pack
+     * @param artifactId  artifactId of the feature pack or null
+     * @param version  version of the feature pack or null
+     * @return  installation definition builder
+     */
+    public WFInstallationDefBuilder createDefBuilder(String groupId, String artifactId, String version) {
+        final WFInstallationDefBuilder builder = WFInstallationDefBuilder.newInstance();
+        builder.setModulesPath(LAYERS_DIR + BASE_LAYER);
+        final WFFeaturePackDefBuilder fpBuilder = new WFFeaturePackDefBuilder(groupId, artifactId, version, builder);
+        for(int i = 0; i < layers; ++i) {
+            final WFPackageDefBuilder pkgBuilder = new WFPackageDefBuilder(getLayer(i) + "-modules");
+            pkgBuilder.addModule(new WFModulesDefBuilder(LAYERS_DIR + getLayer(i)));
+            fpBuilder.addPackage(pkgBuilder);
+        }
+        if(layers > 1) {
+            fpBuilder.addPackage(newPackage("layers-conf", "modules/layers.conf"));
+        }
+        fpBuilder.addPackage(newPackage("bin", "bin"));
+        fpBuilder.addPackage(newPackage("docs", "docs"));
+        fpBuilder.addPackage(newPackage("welcome-content", "welcome-content"));
+        fpBuilder.addPackage(newPackage("domain-config", "domain"));
+        fpBuilder.addPackage(newPackage("standalone-config", "standalone"));
+        fpBuilder.addPackage(newPackage("license", "LICENSE.txt"));
+        fpBuilder.addPackage(newPackage("copyright", "copyright.txt"));
+        fpBuilder.addPackage(newPackage("readme", "README.txt"));
+        fpBuilder.addPackage(newPackage("jboss-modules", "jboss-modules.jar"));
+        builder.addFeaturePack(fpBuilder);
+        return builder;
+    }
+
+    /**
+     * Name of the i-th module.
+     */
+    static String getModuleName(int i) {
+        return GROUPS[i % GROUPS.length] + ".m" + i;
+    }
+
+    private void generateModule(Path home, int i) throws IOException {
+        // each module has a random of its own, so its content does not depend on the rest
+        final Random random = new Random(seed + i);
+        final String name = getModuleName(i);
+        final Path moduleDir = home.resolve(LAYERS_DIR + getLayer(i % layers)).resolve(name.replace('.', '/'));
+        final int moduleSlots = 1 + i % slots;
+        for(int s = 0; s < moduleSlots; ++s) {
+            final String slot = s == 0 ? "main" : "1." + s;
+            final String jar = "m" + i + '-' + (s == 0 ? PRODUCT_VERSION : slot) + ".jar";
+            final StringBuilder buf = new StringBuilder();
+            buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            buf.append("<module xmlns=\"urn:jboss:module:1.3\" name=\"").append(name).append('"');
+            if(s > 0) {
+                buf.append(" slot=\"").append(slot).append('"');
+            }
+            buf.append(">\n");
+            buf.append("    <resources>\n");
+            buf.append("        <resource-root path=\"").append(jar).append("\"/>\n");
+            buf.append("    </resources>\n");
+            final List<Integer> deps = getDependencies(i, random);
+            if(!deps.isEmpty()) {
+                buf.append("    <dependencies>\n");
+                for(int d = 0; d < deps.size(); ++d) {
+                    buf.append("        <module name=\"").append(getModuleName(deps.get(d))).append('"');
+                    if(d % 5 == 4) {
+                        buf.append(" optional=\"true\"");
+                    }
+                    buf.append("/>\n");
+                }
+                buf.append("    </dependencies>\n");
+            }
+            buf.append("</module>\n");
+            final Path slotDir = moduleDir.resolve(slot);
+            write(slotDir.resolve("module.xml"), buf.toString());
+            write(slotDir.resolve(jar), SyntheticContent.bytes(jarSize, SyntheticContent.RANDOM, random));
+        }
+    }
+
+    private List<Integer> getDependencies(int i, Random random) {
+        final int count = Math.min(i, dependencies);
+        final List<Integer> deps = new ArrayList<Integer>(count);
+        while(deps.size() < count) {
+            final Integer dep = random.nextInt(i);
+            if(!deps.contains(dep)) {
+                deps.add(dep);
+            }
+        }
+        return deps;
+    }
+
+    private void generateProductModule(Path home) throws IOException {
+        final Path slotDir = home.resolve(LAYERS_DIR + BASE_LAYER + "/org/jboss/as/product/" + PRODUCT_SLOT);
+        write(slotDir.resolve("module.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<module xmlns=\"urn:jboss:module:1.3\" name=\"org.jboss.as.product\" slot=\"" + PRODUCT_SLOT + "\">\n"
+                + "    <resources>\n"
+                + "        <resource-root path=\"dir\"/>\n"
+                + "    </resources>\n"
+                + "</module>\n");
+        write(slotDir.resolve("dir/META-INF/MANIFEST.MF"), "JBoss-Product-Release-Name: Synthetic\n"
+                + "JBoss-Product-Release-Version: " + PRODUCT_VERSION + '\n');
+    }
+
+    private static String getLayer(int i) {
+        return i == 0 ? BASE_LAYER : "layer" + i;
+    }
+
+    private static WFPackageDefBuilder newPackage(String name, String relativePath) {
+        final WFPackageDefBuilder pkgBuilder = new WFPackageDefBuilder(name);
+        pkgBuilder.addRelativePath(relativePath);
+        return pkgBuilder;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void write(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length == 0 || args.length > 5) {
+            System.out.println("Usage: InstallationGenerator <home> [modules [layers [slots [jar-size]]]]");
+            return;
+        }
+        final InstallationGenerator generator = new InstallationGenerator();
+        if(args.length > 1) {
+            generator.setModules(Integer.parseInt(args[1]));
+        }
+        if(args.length > 2) {
+            generator.setLayers(Integer.parseInt(args[2]));
+        }
+        if(args.length > 3) {
+            generator.setSlots(Integer.parseInt(args[3]));
+        }
+        if(args.length > 4) {
+            generator.setJarSize(Integer.parseInt(args[4]));
+        }
+        final Path home = Paths.get(args[0]);
+        generator.generate(home);
+        System.out.println("Generated " + home.toAbsolutePath());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.pm.util.IoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Copies a file with {@link IoUtils#copyStream(java.io.InputStream, OutputStream)}
+ * between file streams and between memory streams, the latter showing the cost
+ * of the copying loop itself.
+ *
+ * @author Alexey Loubyansky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class IoUtilsBenchmark {
+
+    @Param({"4096", "1048576", "16777216"})
+    int size;
+
+    private File dir;
+    private File source;
+    private File target;
+    private byte[] content;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("pm-bench").toFile();
+        content = SyntheticContent.bytes(size, SyntheticContent.RANDOM, new Random(SyntheticContent.SEED));
+        source = new File(dir, "source");
+        Files.write(source.toPath(), content);
+        target = new File(dir, "target");
+    }
+
+    @TearDown
+    public void tearDown() {
+        IoUtils.recursiveDelete(dir);
+    }
+
+    @Benchmark
+    public void copyFile() throws IOException {
+        try (FileInputStream is = new FileInputStream(source);
+                FileOutputStream os = new FileOutputStream(target)) {
+            IoUtils.copyStream(is, os);
+        }
+    }
+
+    @Benchmark
+    public void copyMemory(final Blackhole blackhole) throws IOException {
+        IoUtils.copyStream(new ByteArrayInputStream(content), new OutputStream() {
+            @Override
+            public void write(int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                blackhole.consume(b);
+            }
+        });
+    }
+}
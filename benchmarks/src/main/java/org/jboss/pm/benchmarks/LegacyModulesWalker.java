@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.pm.def.InstallationDefException;
+import org.jboss.pm.def.PackageDef;
+import org.jboss.pm.def.PackageDef.PackageDefBuilder;
+
+/**
+ * The modules directory walker that preceded the parallel scanner, kept
+ * as the baseline of {@link ModulesScanBenchmark}. It walks the directory
+ * on the calling thread, calls {@link Files#isDirectory} for every child
+ * and {@link Files#exists} for a module.xml in every directory.
+ *
+ * @author Alexey Loubyansky
+ */
+class LegacyModulesWalker {
+
+    private final List<PackageDef> modules = new ArrayList<PackageDef>();
+
+    List<PackageDef> walk(Path modulesDir, String modulesPath) throws InstallationDefException {
+        final List<String> path = new ArrayList<String>();
+        for(Path dir : listChildren(modulesDir)) {
+            if(Files.isDirectory(dir)) {
+                path.add(getName(dir));
+                for(Path child : listChildren(dir)) {
+                    if(Files.isDirectory(child)) {
+                        processModules(modulesPath, path, child);
+                    }
+                }
+                path.remove(path.size() - 1);
+            }
+        }
+        return modules;
+    }
+
+    private void processModules(String modulesPath, List<String> path, Path dir) throws InstallationDefException {
+
+        final Path moduleXml = dir.resolve("module.xml");
+        if(!Files.exists(moduleXml)) {
+            for(Path child : listChildren(dir)) {
+                if (Files.isDirectory(child)) {
+                    path.add(getName(dir));
+                    processModules(modulesPath, path, child);
+                    path.remove(path.size() - 1);
+                }
+            }
+            return;
+        }
+
+        final StringBuilder moduleName = new StringBuilder();
+        final StringBuilder contentPath = new StringBuilder(modulesPath).append('/');
+        moduleName.append(path.get(0));
+        contentPath.append(path.get(0));
+        for(int i = 1; i < path.size(); ++i) {
+            final String part = path.get(i);
+            moduleName.append('.').append(part);
+            contentPath.append('/').append(part);
+        }
+        moduleName.append('.').append(getName(dir));
+        final PackageDefBuilder moduleBuilder = PackageDef.packageBuilder(moduleName.toString());
+        addContent(moduleBuilder, dir, contentPath.toString());
+        modules.add(moduleBuilder.build());
+    }
+
+    private void addContent(PackageDefBuilder builder, Path f, String relativePath) throws InstallationDefException {
+        if(Files.isDirectory(f)) {
+            for(Path c : listChildren(f)) {
+                addContent(builder, c, relativePath + '/' + getName(f));
+            }
+        } else {
+            builder.addContentPath(relativePath + '/' + getName(f));
+        }
+    }
+
+    private static String getName(Path path) {
+        return path.getFileName().toString();
+    }
+
+    private static List<Path> listChildren(Path dir) throws InstallationDefException {
+        final List<Path> children = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for(Path child : stream) {
+                children.add(child);
+            }
+        } catch (IOException e) {
+            throw new InstallationDefException("Failed to read directory " + dir, e);
+        }
+        return children;
+    }
+}
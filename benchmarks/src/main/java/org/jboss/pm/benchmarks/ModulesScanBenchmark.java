@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.pm.def.InstallationDef;
+import org.jboss.pm.def.InstallationDefException;
+import org.jboss.pm.def.PackageDef;
+import org.jboss.pm.util.IoUtils;
+import org.jboss.pm.wildfly.def.WFInstallationDefBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the installation definition of a generated installation, which is
+ * mostly scanning the modules directory and parsing module.xml of every module,
+ * on a single thread and on the default number of threads. The baseline is
+ * the walker the scanner replaced, see {@link LegacyModulesWalker}.
+ *
+ * @author Alexey Loubyansky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ModulesScanBenchmark {
+
+    @Param({"500", "2000"})
+    int modules;
+
+    /**
+     * Number of scanning threads, 0 for the default.
+     */
+    @Param({"1", "0"})
+    int scanThreads;
+
+    private File dir;
+    private InstallationGenerator generator;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("pm-bench").toFile();
+        generator = new InstallationGenerator().setModules(modules).setJarSize(1024);
+        generator.generate(dir.toPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        IoUtils.recursiveDelete(dir);
+    }
+
+    @Benchmark
+    public InstallationDef scan() throws InstallationDefException {
+        final WFInstallationDefBuilder builder = generator.createDefBuilder("org.jboss.pm.benchmarks", "synthetic", "1.0");
+        if(scanThreads > 0) {
+            builder.setScanThreads(scanThreads);
+        }
+        return builder.build(dir);
+    }
+
+    /**
+     * Walks the modules with the walker the scanner replaced, which does not depend
+     * on the number of scanning threads. Unlike {@link #scan()} it neither parses
+     * module.xml nor builds the rest of the definition, so the difference understates
+     * what the scanner saves.
+     */
+    @Benchmark
+    public List<PackageDef> legacyWalk() throws InstallationDefException {
+        final String modulesPath = InstallationGenerator.LAYERS_DIR + InstallationGenerator.BASE_LAYER;
+        return new LegacyModulesWalker().walk(dir.toPath().resolve(modulesPath), modulesPath);
+    }
+}
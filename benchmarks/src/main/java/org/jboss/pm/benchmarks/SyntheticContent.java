@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates the input of the benchmarks. The content is generated from
+ * a seed, so every run of a benchmark works with the same bytes.
+ *
+ * The compressibility of the content is either {@link #RANDOM}, i.e. bytes
+ * that do not deflate at all like the content of the jars, or {@link #TEXT},
+ * i.e. words out of a small vocabulary that deflate well like the XML
+ * and the scripts of an installation.
+ *
+ * @author Alexey Loubyansky
+ */
+class SyntheticContent {
+
+    static final String RANDOM = "random";
+    static final String TEXT = "text";
+
+    static final long SEED = 20161018L;
+
+    private static final byte[][] WORDS;
+    static {
+        final String[] words = new String[] {"<module", "name=", "\"org.jboss.as\"", "<resources>", "<dependencies>",
+                "</module>", "slot=", "\"main\"", "export=", "true", "services=", "import", "path", "<system>",
+                "optional=", "#!/bin/sh", "JAVA_OPTS", "subsystem", "xmlns=", "urn:jboss:domain"};
+        WORDS = new byte[words.length][];
+        for(int i = 0; i < words.length; ++i) {
+            WORDS[i] = words[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    static byte[] bytes(int size, String compressibility, Random random) {
+        final byte[] bytes = new byte[size];
+        if(RANDOM.equals(compressibility)) {
+            random.nextBytes(bytes);
+        } else if(TEXT.equals(compressibility)) {
+            int i = 0;
+            while(i < size) {
+                final byte[] word = WORDS[random.nextInt(WORDS.length)];
+                final int length = Math.min(word.length, size - i);
+                System.arraycopy(word, 0, bytes, i, length);
+                i += length;
+                if(i < size) {
+                    bytes[i++] = (byte) (random.nextInt(8) == 0 ? '\n' : ' ');
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown compressibility " + compressibility);
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the files into directories of at most 100 files each
+     * under the target directory.
+     *
+     * @param dir  target directory
+     * @param count  number of files
+     * @param size  size of each file
+     * @param compressibility  {@link #RANDOM} or {@link #TEXT}
+     * @throws IOException  in case of a failure
+     */
+    static void writeFiles(Path dir, int count, int size, String compressibility) throws IOException {
+        final Random random = new Random(SEED);
+        for(int i = 0; i < count; ++i) {
+            final Path file = dir.resolve(getPath(i));
+            Files.createDirectories(file.getParent());
+            Files.write(file, bytes(size, compressibility, random));
+        }
+    }
+
+    /**
+     * Relative path of the i-th synthetic file.
+     */
+    static String getPath(int i) {
+        return "d" + i / 100 + "/f" + i + ".bin";
+    }
+}
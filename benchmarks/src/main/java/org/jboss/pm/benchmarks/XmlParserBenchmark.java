@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jboss.pm.provisioning.ProvisioningMetaData;
+import org.jboss.pm.provisioning.xml.ProvisioningXmlParser;
+import org.jboss.pm.wildfly.def.WFInstallationDefBuilder;
+import org.jboss.pm.wildfly.xml.WFInstallationDefParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses synthetic provisioning and installation definition XML
+ * of the size given by the number of feature packs and their packages.
+ *
+ * @author Alexey Loubyansky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class XmlParserBenchmark {
+
+    @Param({"1", "10"})
+    int featurePacks;
+
+    @Param({"10", "500"})
+    int packages;
+
+    private byte[] provisioningXml;
+    private byte[] installationDefXml;
+    private ProvisioningXmlParser provisioningParser;
+    private WFInstallationDefParser installationDefParser;
+
+    @Setup
+    public void setup() {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("<installation xmlns=\"urn:wildfly:pm-provisioning:1.0\">\n");
+        buf.append("    <universe name=\"org.jboss.pm.benchmarks\">\n");
+        for(int i = 0; i < featurePacks; ++i) {
+            buf.append("        <feature-pack name=\"fp").append(i).append("\" version=\"1.0\">\n");
+            for(int j = 0; j < packages; ++j) {
+                buf.append("            <").append(j % 10 == 0 ? "exclude" : "package").append(" name=\"package").append(j).append("\"/>\n");
+            }
+            buf.append("        </feature-pack>\n");
+        }
+        buf.append("    </universe>\n");
+        buf.append("</installation>\n");
+        provisioningXml = buf.toString().getBytes(StandardCharsets.UTF_8);
+
+        buf.setLength(0);
+        buf.append("<installation xmlns=\"urn:wildfly:pm-install-def:1.0\">\n");
+        buf.append("    <modules relative=\"modules/system/layers/base\"/>\n");
+        buf.append("    <feature-packs>\n");
+        for(int i = 0; i < featurePacks; ++i) {
+            buf.append("        <feature-pack group-id=\"org.jboss.pm.benchmarks\" artifact-id=\"fp").append(i).append("\" version=\"1.0\">\n");
+            for(int j = 0; j < packages; ++j) {
+                buf.append("            <package name=\"package").append(j).append("\">\n");
+                if(j % 10 == 0) {
+                    buf.append("                <modules>\n");
+                    buf.append("                    <module name=\"org.jboss.pm.module").append(j).append("\"/>\n");
+                    buf.append("                </modules>\n");
+                } else {
+                    buf.append("                <path relative=\"path").append(j).append("\"/>\n");
+                    buf.append("                <package-ref name=\"package").append(j - 1).append("\"/>\n");
+                }
+                buf.append("            </package>\n");
+            }
+            buf.append("        </feature-pack>\n");
+        }
+        buf.append("    </feature-packs>\n");
+        buf.append("</installation>\n");
+        installationDefXml = buf.toString().getBytes(StandardCharsets.UTF_8);
+
+        provisioningParser = new ProvisioningXmlParser();
+        installationDefParser = new WFInstallationDefParser();
+    }
+
+    @Benchmark
+    public ProvisioningMetaData parseProvisioningXml() throws XMLStreamException {
+        return provisioningParser.parse(new ByteArrayInputStream(provisioningXml));
+    }
+
+    @Benchmark
+    public WFInstallationDefBuilder parseInstallationDefXml() throws XMLStreamException {
+        return installationDefParser.parse(new ByteArrayInputStream(installationDefXml));
+    }
+}
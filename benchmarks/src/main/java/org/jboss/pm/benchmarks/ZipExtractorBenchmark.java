@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jboss.pm.util.IoUtils;
+import org.jboss.pm.util.ZipExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extracts a deflated archive of synthetic files with {@link ZipExtractor},
+ * which is what the provisioning spends most of its time on.
+ *
+ * @author Alexey Loubyansky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ZipExtractorBenchmark {
+
+    @Param({"100", "1000"})
+    int files;
+
+    @Param({"1024", "65536"})
+    int fileSize;
+
+    @Param({SyntheticContent.TEXT, SyntheticContent.RANDOM})
+    String compressibility;
+
+    @Param({"1", "4"})
+    int threads;
+
+    private File dir;
+    private File zip;
+    private File target;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("pm-bench").toFile();
+        zip = new File(dir, "content.zip");
+        target = new File(dir, "target");
+        final Random random = new Random(SyntheticContent.SEED);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip.toPath()))) {
+            for(int i = 0; i < files; ++i) {
+                out.putNextEntry(new ZipEntry(SyntheticContent.getPath(i)));
+                out.write(SyntheticContent.bytes(fileSize, compressibility, random));
+                out.closeEntry();
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteTarget() {
+        IoUtils.recursiveDelete(target);
+    }
+
+    @TearDown
+    public void tearDown() {
+        IoUtils.recursiveDelete(dir);
+    }
+
+    @Benchmark
+    public void extract() throws IOException {
+        new ZipExtractor().setThreads(threads).extract(zip, target);
+    }
+}
@@ -30,7 +30,15 @@ public interface Constants {
 
     String FEATURE_PACKS = "featurepacks";
     String PM_INSTALL_DIR = "pm.target.dir";
+    String PM_INSTALL_DURABILITY = "pm.install.durability";
+    String PM_INSTALL_PARALLELISM = "pm.install.parallelism";
+    String PM_INSTALL_STAGED = "pm.install.staged";
+    String PM_INSTALL_STORE = "pm.install.store";
+    String PM_INSTALL_THREADS = "pm.install.threads";
     String PM_INSTALL_WORK_DIR = "pm.install.workdir";
+    String PM_IO_BUFFERS = "pm.io.buffers";
+    String PM_IO_DIRECT_BUFFERS = "pm.io.direct-buffers";
+    String PM_STORE_DIR = "pm.store.dir";
     String PM_TOOL_HOME_DIR = "pm.tool.home";
     String PROVISIONING_XML = "provisioning.xml";
 }
@@ -0,0 +1,306 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.build;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.jboss.pm.util.IoUtils;
+import org.jboss.pm.util.ZipReader;
+import org.jboss.pm.util.ZipWriter;
+
+/**
+ * Content of a file compressed ahead of being appended to a ZIP archive.
+ * The compressed bytes are kept in memory unless they exceed the spill
+ * threshold in which case they are moved to a temporary file.
+ * An entry may also refer to the raw content of an entry of another archive
+ * in which case it is copied as is.
+ *
+ * @author Alexey Loubyansky
+ */
+class CompressedEntry {
+
+    private static final String DIRECTORY = "directory";
+
+    /**
+     * Max length of the sample passed to the {@link CompressionPolicy}, which
+     * is enough to tell the compressibility without compressing the file twice.
+     */
+    private static final int SAMPLE_SIZE = 4096;
+
+    /**
+     * Compresses the file into a new entry.
+     *
+     * @param name  entry name
+     * @param src  file to compress
+     * @param policy  decides whether and how the file is compressed
+     * @param spillThreshold  max number of compressed bytes kept in memory
+     * @param spillDir  directory for the temporary files
+     * @return  compressed entry
+     * @throws IOException  in case of a failure
+     */
+    static CompressedEntry compress(String name, File src, CompressionPolicy policy, int spillThreshold, File spillDir) throws IOException {
+        final long startTime = System.nanoTime();
+        final boolean dir = src.isDirectory();
+        final long lastModified = src.lastModified();
+        final ZipEntry entry = new ZipEntry(dir && !name.endsWith("/") ? name + '/' : name);
+        entry.setTime(lastModified);
+        if(dir) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(0);
+            entry.setCompressedSize(0);
+            entry.setCrc(0);
+            final CompressedEntry result = new CompressedEntry(entry, IoUtils.NO_CONTENT);
+            result.sha1 = FeaturePackManifest.toHex(FeaturePackManifest.newDigest().digest());
+            result.lastModified = lastModified;
+            result.reason = DIRECTORY;
+            return result;
+        }
+
+        final long srcLength = src.length();
+        final CompressedEntry result = new CompressedEntry(entry, new byte[(int) Math.min(Math.max(srcLength / 2, 512), spillThreshold)]);
+        result.lastModified = lastModified;
+        final CRC32 crc = new CRC32();
+        final MessageDigest digest = FeaturePackManifest.newDigest();
+        final ByteBuffer buf = IoUtils.getStreamBufferPool().take();
+        final byte[] in = buf.array();
+        long size = 0;
+        Deflater deflater = null;
+        try (InputStream is = new FileInputStream(src)) {
+            // the beginning of the first buffer is the sample the policy decides on
+            int read = readFully(is, in);
+            final CompressionPolicy.Decision decision = policy.decide(entry.getName(), srcLength, in, Math.min(read, SAMPLE_SIZE));
+            result.reason = decision.getReason();
+            if(!decision.isStored()) {
+                deflater = new Deflater(decision.getLevel(), true);
+            }
+            while(read > 0) {
+                crc.update(in, 0, read);
+                digest.update(in, 0, read);
+                size += read;
+                if(deflater == null) {
+                    result.append(in, read, spillThreshold, spillDir);
+                } else {
+                    deflater.setInput(in, 0, read);
+                    while(!deflater.needsInput()) {
+                        result.deflate(deflater, spillThreshold, spillDir);
+                    }
+                }
+                read = is.read(in);
+            }
+            if(deflater != null) {
+                deflater.finish();
+                while(!deflater.finished()) {
+                    result.deflate(deflater, spillThreshold, spillDir);
+                }
+            }
+            result.closeSpill();
+        } catch(IOException | RuntimeException e) {
+            result.discard();
+            throw e;
+        } finally {
+            IoUtils.getStreamBufferPool().release(buf);
+            if(deflater != null) {
+                deflater.end();
+            }
+        }
+        entry.setMethod(deflater == null ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        entry.setSize(size);
+        entry.setCrc(crc.getValue());
+        entry.setCompressedSize(result.spillFile == null ? result.length : result.spillFile.length());
+        result.sha1 = FeaturePackManifest.toHex(digest.digest());
+        result.nanos = System.nanoTime() - startTime;
+        return result;
+    }
+
+    private static int readFully(InputStream is, byte[] buf) throws IOException {
+        int total = 0;
+        while(total < buf.length) {
+            final int read = is.read(buf, total, buf.length - total);
+            if(read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Creates an entry which will copy the raw content of an entry of another archive.
+     *
+     * @param name  name of the new entry
+     * @param source  archive to copy the content from
+     * @param sourceEntry  entry of the source archive
+     * @param lastModified  last modification time of the file the entry represents
+     * @param sha1  SHA-1 of the file the entry represents or null if unknown
+     * @return  entry
+     */
+    static CompressedEntry raw(String name, ZipReader source, ZipReader.Entry sourceEntry, long lastModified, String sha1) {
+        final ZipEntry entry = sourceEntry.toZipEntry(name);
+        entry.setTime(lastModified);
+        final CompressedEntry result = new CompressedEntry(entry, null);
+        result.source = source;
+        result.sourceEntry = sourceEntry;
+        result.lastModified = lastModified;
+        result.sha1 = sha1;
+        return result;
+    }
+
+    private final ZipEntry entry;
+    private byte[] data;
+    private int length;
+    private File spillFile;
+    private OutputStream spillOut;
+    private ZipReader source;
+    private ZipReader.Entry sourceEntry;
+    private long lastModified;
+    private String sha1;
+    private String reason;
+    private long nanos;
+
+    private CompressedEntry(ZipEntry entry, byte[] data) {
+        this.entry = entry;
+        this.data = data;
+    }
+
+    ZipEntry getEntry() {
+        return entry;
+    }
+
+    boolean isRaw() {
+        return source != null;
+    }
+
+    /**
+     * Last modification time of the file the entry was created from.
+     */
+    long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * SHA-1 of the uncompressed content or null if unknown.
+     */
+    String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * Reason of the compression policy decision or null for raw entries.
+     */
+    String getReason() {
+        return reason;
+    }
+
+    /**
+     * Time spent reading and compressing the content.
+     */
+    long getNanos() {
+        return nanos;
+    }
+
+    private void deflate(Deflater deflater, int spillThreshold, File spillDir) throws IOException {
+        ensureSpace(spillThreshold, spillDir);
+        length += deflater.deflate(data, length, data.length - length);
+    }
+
+    private void append(byte[] buf, int len, int spillThreshold, File spillDir) throws IOException {
+        int off = 0;
+        while(off < len) {
+            ensureSpace(spillThreshold, spillDir);
+            final int chunk = Math.min(len - off, data.length - length);
+            System.arraycopy(buf, off, data, length, chunk);
+            length += chunk;
+            off += chunk;
+        }
+    }
+
+    private void ensureSpace(int spillThreshold, File spillDir) throws IOException {
+        if(length == data.length) {
+            if(spillOut != null) {
+                spillOut.write(data, 0, length);
+                length = 0;
+            } else if(data.length < spillThreshold) {
+                data = Arrays.copyOf(data, (int) Math.min((long) data.length * 2, spillThreshold));
+            } else {
+                spillFile = File.createTempFile("pm-", ".deflate", spillDir);
+                spillOut = new FileOutputStream(spillFile);
+                spillOut.write(data, 0, length);
+                length = 0;
+            }
+        }
+    }
+
+    private void closeSpill() throws IOException {
+        if(spillOut != null) {
+            spillOut.write(data, 0, length);
+            spillOut.close();
+            spillOut = null;
+            data = null;
+            length = 0;
+        }
+    }
+
+    /**
+     * Appends the entry to the archive and releases the resources held by it.
+     *
+     * @return  offset of the entry's local header
+     */
+    long writeTo(ZipWriter writer) throws IOException {
+        try {
+            if(source != null) {
+                try (InputStream is = source.openRaw(sourceEntry)) {
+                    return writer.writeEntry(entry, is);
+                }
+            }
+            if(spillFile == null) {
+                return writer.writeEntry(entry, data, 0, length);
+            }
+            try (InputStream is = new FileInputStream(spillFile)) {
+                return writer.writeEntry(entry, is);
+            }
+        } finally {
+            discard();
+        }
+    }
+
+    void discard() {
+        data = null;
+        IoUtils.safeClose(spillOut);
+        spillOut = null;
+        if(spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+}
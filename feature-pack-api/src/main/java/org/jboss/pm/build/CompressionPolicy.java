@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.build;
+
+/**
+ * Decides how each entry of a feature pack archive is compressed.
+ *
+ * Implementations are called concurrently from the compressing threads.
+ *
+ * @author Alexey Loubyansky
+ */
+public interface CompressionPolicy {
+
+    /**
+     * How an entry is to be written and why.
+     */
+    final class Decision {
+
+        public static Decision store(String reason) {
+            return new Decision(true, -1, reason);
+        }
+
+        public static Decision deflate(int level, String reason) {
+            if(level < -1 || level > 9) {
+                throw new IllegalArgumentException("Invalid compression level " + level);
+            }
+            return new Decision(false, level, reason);
+        }
+
+        private final boolean stored;
+        private final int level;
+        private final String reason;
+
+        private Decision(boolean stored, int level, String reason) {
+            assert reason != null : "reason is null";
+            this.stored = stored;
+            this.level = level;
+            this.reason = reason;
+        }
+
+        public boolean isStored() {
+            return stored;
+        }
+
+        /**
+         * Deflate level, meaningful only if the entry is not stored.
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * Short description of the rule that made the decision. Entries
+         * are grouped by it in the build report.
+         */
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    /**
+     * Decides how the entry should be written.
+     *
+     * @param name  entry name
+     * @param size  size of the content
+     * @param sample  the beginning of the content
+     * @param sampleLength  number of valid bytes in the sample
+     * @return  decision
+     */
+    Decision decide(String name, long size, byte[] sample, int sampleLength);
+}
@@ -0,0 +1,180 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.build;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Stores entries that are already compressed, judging by their extension,
+ * too small to benefit from compression or whose sample does not compress
+ * well enough. Everything else is deflated at the configured level.
+ *
+ * @author Alexey Loubyansky
+ */
+public class DefaultCompressionPolicy implements CompressionPolicy {
+
+    public static final Set<String> DEFAULT_STORED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "jar", "war", "ear", "rar", "sar", "zip", "gz", "tgz", "bz2", "xz", "7z",
+            "png", "jpg", "jpeg", "gif", "ico")));
+
+    public static final long DEFAULT_STORE_BELOW = 64;
+
+    public static final double DEFAULT_STORE_RATIO = 0.9;
+
+    public static class Builder {
+
+        private int level = Deflater.DEFAULT_COMPRESSION;
+        private long storeBelow = DEFAULT_STORE_BELOW;
+        private double storeRatio = DEFAULT_STORE_RATIO;
+        private Set<String> storedExtensions = Collections.emptySet();
+
+        private Builder() {
+        }
+
+        public Builder setLevel(int level) {
+            if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("Invalid compression level " + level);
+            }
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Entries smaller than this are stored.
+         */
+        public Builder setStoreBelow(long storeBelow) {
+            this.storeBelow = storeBelow;
+            return this;
+        }
+
+        /**
+         * Entries whose sample doesn't compress below this fraction of
+         * its size are stored. 1 or more disables sampling.
+         */
+        public Builder setStoreRatio(double storeRatio) {
+            this.storeRatio = storeRatio;
+            return this;
+        }
+
+        /**
+         * Entries with this extension are stored. If no extension
+         * is added the default ones are used.
+         */
+        public Builder addStoredExtension(String extension) {
+            assert extension != null : "extension is null";
+            switch(storedExtensions.size()) {
+                case 0:
+                    storedExtensions = Collections.singleton(extension.toLowerCase(Locale.ENGLISH));
+                    break;
+                case 1:
+                    storedExtensions = new HashSet<String>(storedExtensions);
+                default:
+                    storedExtensions.add(extension.toLowerCase(Locale.ENGLISH));
+            }
+            return this;
+        }
+
+        public DefaultCompressionPolicy build() {
+            return new DefaultCompressionPolicy(level, storeBelow, storeRatio,
+                    storedExtensions.isEmpty() ? DEFAULT_STORED_EXTENSIONS : Collections.unmodifiableSet(storedExtensions));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static final int MIN_SAMPLE = 512;
+
+    private static final Decision STORE_EXTENSION = Decision.store("store extension");
+    private static final Decision STORE_SMALL = Decision.store("store small");
+    private static final Decision STORE_INCOMPRESSIBLE = Decision.store("store incompressible");
+
+    private final int level;
+    private final long storeBelow;
+    private final double storeRatio;
+    private final Set<String> storedExtensions;
+    private final Decision deflate;
+
+    protected DefaultCompressionPolicy(int level, long storeBelow, double storeRatio, Set<String> storedExtensions) {
+        this.level = level;
+        this.storeBelow = storeBelow;
+        this.storeRatio = storeRatio;
+        this.storedExtensions = storedExtensions;
+        this.deflate = Decision.deflate(level, "deflate level " + (level == Deflater.DEFAULT_COMPRESSION ? "default" : String.valueOf(level)));
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getStoreBelow() {
+        return storeBelow;
+    }
+
+    public double getStoreRatio() {
+        return storeRatio;
+    }
+
+    public Set<String> getStoredExtensions() {
+        return storedExtensions;
+    }
+
+    @Override
+    public Decision decide(String name, long size, byte[] sample, int sampleLength) {
+        final int dot = name.lastIndexOf('.');
+        if(dot > name.lastIndexOf('/') && storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH))) {
+            return STORE_EXTENSION;
+        }
+        if(size < storeBelow) {
+            return STORE_SMALL;
+        }
+        if(storeRatio < 1 && sampleLength >= MIN_SAMPLE && sampledRatio(sample, sampleLength) > storeRatio) {
+            return STORE_INCOMPRESSIBLE;
+        }
+        return deflate;
+    }
+
+    private static double sampledRatio(byte[] sample, int sampleLength) {
+        // the deflater is ended right away, like the ones compressing the entries,
+        // so that its native memory does not outlive the build's threads
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, sampleLength);
+            deflater.finish();
+            final byte[] out = new byte[1024];
+            long compressed = 0;
+            while(!deflater.finished()) {
+                compressed += deflater.deflate(out);
+            }
+            return (double) compressed / sampleLength;
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -22,56 +22,297 @@
 
 package org.jboss.pm.build;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jboss.pm.Constants;
 import org.jboss.pm.GAV;
+import org.jboss.pm.build.FeaturePackBuildReport.PackResult;
 import org.jboss.pm.def.FeaturePackDef;
+import org.jboss.pm.def.FeaturePackIndex;
 import org.jboss.pm.def.GroupDef;
 import org.jboss.pm.def.InstallationDef;
+import org.jboss.pm.util.BufferPool;
+import org.jboss.pm.util.IoUtils;
+import org.jboss.pm.util.ZipReader;
+import org.jboss.pm.util.ZipWriter;
 
 /**
+ * Builds feature pack archives out of the installation definition.
+ *
+ * Along with each archive the build stores a manifest of the files it was
+ * built from under the work directory. When the build runs again against
+ * the same work directory, entries whose files haven't changed since are
+ * copied from the previous archive without being compressed again.
+ *
+ * Feature packs can also be built straight from a distribution ZIP
+ * instead of an unpacked installation. In that case the compressed content
+ * of the distribution entries is copied into the feature pack archives as is.
+ *
+ * The first entry of each archive is the {@link FeaturePackIndex} which allows
+ * a subset of the packages to be provisioned.
  *
  * @author Alexey Loubyansky
  */
 public class FeaturePackBuild {
 
-    private static final int DEFAULT_BUFFER_SIZE = 65536;
+    private static final String MANIFESTS = "manifests";
 
     private final InstallationDef installation;
     private final File workDir;
     private final File homeDir;
+    private final File distribution;
+    private final String distributionHome;
+
+    private ExecutorService executor;
+    private int parallelism = 1;
+    private ExecutorService compressionExecutor;
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    private CompressionPolicy compressionPolicy = DefaultCompressionPolicy.builder().build();
 
     public FeaturePackBuild(InstallationDef installation, File homeDir, File workDir) {
         this.installation = installation;
         this.workDir = workDir;
         this.homeDir = homeDir;
+        this.distribution = null;
+        this.distributionHome = null;
+    }
+
+    /**
+     * Creates a build which copies the content of the feature packs
+     * from the distribution ZIP without inflating and deflating it.
+     *
+     * @param installation  installation definition
+     * @param distribution  distribution ZIP
+     * @param distributionHome  path of the installation home inside the ZIP,
+     *                          e.g. wildfly-10.1.0.Final, or an empty string
+     *                          if the installation is at the root of the ZIP
+     * @param workDir  work directory
+     */
+    public FeaturePackBuild(InstallationDef installation, File distribution, String distributionHome, File workDir) {
+        assert distribution != null : "distribution is null";
+        assert distributionHome != null : "distributionHome is null";
+        this.installation = installation;
+        this.workDir = workDir;
+        this.homeDir = null;
+        this.distribution = distribution;
+        if(distributionHome.isEmpty() || distributionHome.endsWith("/")) {
+            this.distributionHome = distributionHome;
+        } else {
+            this.distributionHome = distributionHome + '/';
+        }
+    }
+
+    /**
+     * Number of feature packs to build concurrently. Values greater than 1
+     * make the build create its own thread pool for the duration of
+     * {@link #buildFeaturePacks()}. Ignored if an executor has been set.
+     *
+     * @param parallelism  number of feature packs built concurrently
+     * @return  this build
+     */
+    public FeaturePackBuild setParallelism(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be greater than 0: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Executor the feature packs should be built on. The executor is not shut down
+     * by the build.
+     *
+     * @param executor  executor to submit feature pack builds to
+     * @return  this build
+     */
+    public FeaturePackBuild setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Number of threads compressing the entries of the feature pack archives.
+     * The threads are shared by all the feature packs being built. If the value is 1
+     * entries are compressed on the thread writing the archive.
+     * Ignored if a compression executor has been set.
+     *
+     * @param compressionThreads  number of compressing threads
+     * @return  this build
+     */
+    public FeaturePackBuild setCompressionThreads(int compressionThreads) {
+        if(compressionThreads < 1) {
+            throw new IllegalArgumentException("compression threads must be greater than 0: " + compressionThreads);
+        }
+        this.compressionThreads = compressionThreads;
+        return this;
+    }
+
+    /**
+     * Executor the entries of the feature pack archives should be compressed on.
+     * It must not be the same executor the feature packs are built on since
+     * the feature pack builds block waiting for the compressed entries.
+     * The executor is not shut down by the build.
+     *
+     * @param compressionExecutor  executor to submit entry compression to
+     * @return  this build
+     */
+    public FeaturePackBuild setCompressionExecutor(ExecutorService compressionExecutor) {
+        this.compressionExecutor = compressionExecutor;
+        return this;
+    }
+
+    /**
+     * Policy deciding whether and how each entry of the feature pack archives
+     * is compressed. By default it is {@link DefaultCompressionPolicy} with the
+     * default settings.
+     *
+     * @param compressionPolicy  compression policy
+     * @return  this build
+     */
+    public FeaturePackBuild setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        assert compressionPolicy != null : "compressionPolicy is null";
+        this.compressionPolicy = compressionPolicy;
+        return this;
     }
 
-    public void buildFeaturePacks() throws PMBuildException {
+    public FeaturePackBuildReport buildFeaturePacks() throws PMBuildException {
+        final FeaturePackBuildReport report = new FeaturePackBuildReport();
         if(!installation.hasFeaturePacks()) {
-            return;
+            return report;
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final List<BufferPool.Stats> bufferStats = IoUtils.getBufferPoolStats();
+        ZipReader distZip = null;
+        if(distribution != null) {
+            try {
+                distZip = new ZipReader(distribution);
+            } catch (IOException e) {
+                throw new PMBuildException("Failed to read " + distribution.getAbsolutePath(), e);
+            }
+        }
+        final ExecutorService compressor;
+        if(compressionExecutor != null) {
+            compressor = compressionExecutor;
+        } else if(compressionThreads > 1) {
+            compressor = Executors.newFixedThreadPool(compressionThreads);
+        } else {
+            compressor = null;
+        }
+        try {
+            buildFeaturePacks(report, compressor, distZip);
+        } finally {
+            if(compressor != null && compressionExecutor == null) {
+                compressor.shutdownNow();
+            }
+            IoUtils.safeClose(distZip);
         }
+        report.setTotalMillis(System.currentTimeMillis() - startTime);
+        final List<BufferPool.Stats> buildBufferStats = new ArrayList<BufferPool.Stats>(bufferStats.size());
+        final List<BufferPool.Stats> currentBufferStats = IoUtils.getBufferPoolStats();
+        for(int i = 0; i < bufferStats.size(); ++i) {
+            buildBufferStats.add(currentBufferStats.get(i).since(bufferStats.get(i)));
+        }
+        report.setBufferPoolStats(buildBufferStats);
+        reportFailures(report);
+        return report;
+    }
+
+    private void buildFeaturePacks(final FeaturePackBuildReport report, final ExecutorService compressor,
+            final ZipReader distZip) throws PMBuildException {
+        final Collection<FeaturePackDef> fpDefs = installation.getFeaturePackDefs();
+        if(executor == null && (parallelism == 1 || fpDefs.size() == 1)) {
+            for(FeaturePackDef fpDef : fpDefs) {
+                report.addResult(buildAndReport(fpDef, report, compressor, distZip));
+            }
+        } else {
+            final ExecutorService executor;
+            if(this.executor == null) {
+                executor = Executors.newFixedThreadPool(Math.min(parallelism, fpDefs.size()));
+            } else {
+                executor = this.executor;
+            }
+            try {
+                final List<Future<PackResult>> futures = new ArrayList<Future<PackResult>>(fpDefs.size());
+                for(final FeaturePackDef fpDef : fpDefs) {
+                    futures.add(executor.submit(new Callable<PackResult>() {
+                        @Override
+                        public PackResult call() {
+                            return buildAndReport(fpDef, report, compressor, distZip);
+                        }
+                    }));
+                }
+                for(Future<PackResult> future : futures) {
+                    try {
+                        report.addResult(future.get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new PMBuildException("Interrupted while building feature packs", e);
+                    } catch (ExecutionException e) {
+                        throw new PMBuildException("Failed to build feature packs", e.getCause());
+                    }
+                }
+            } finally {
+                if(this.executor == null) {
+                    executor.shutdownNow();
+                }
+            }
+        }
+    }
 
-        for(FeaturePackDef fpDef : installation.getFeaturePackDefs()) {
-            buildFeaturePack(fpDef);
+    private void reportFailures(final FeaturePackBuildReport report) throws PMBuildException {
+        if(report.hasFailures()) {
+            final StringBuilder buf = new StringBuilder("Failed to build feature pack(s):");
+            final List<Throwable> failures = new ArrayList<Throwable>();
+            for(PackResult result : report.getResults()) {
+                if(result.isFailed()) {
+                    buf.append(' ').append(result.getGAV());
+                    if(result.getFailure().getLocalizedMessage() != null) {
+                        buf.append(" (").append(result.getFailure().getLocalizedMessage()).append(')');
+                    }
+                    failures.add(result.getFailure());
+                }
+            }
+            final PMBuildException e = new PMBuildException(buf.toString(), failures.get(0));
+            for(int i = 1; i < failures.size(); ++i) {
+                e.addSuppressed(failures.get(i));
+            }
+            throw e;
         }
     }
 
-    private void buildFeaturePack(FeaturePackDef fpDef) throws PMBuildException {
+    private PackResult buildAndReport(FeaturePackDef fpDef, FeaturePackBuildReport report, ExecutorService compressor,
+            ZipReader distZip) {
+        final long startTime = System.currentTimeMillis();
+        final int[] counts = new int[2];
+        File fpZip = null;
+        Throwable failure = null;
+        try {
+            fpZip = getFeaturePackFile(fpDef.getGAV());
+            buildFeaturePack(fpDef, fpZip, report, compressor, distZip, counts);
+        } catch (PMBuildException | RuntimeException e) {
+            failure = e;
+        }
+        return new PackResult(fpDef.getGAV(), System.currentTimeMillis() - startTime, counts[0], counts[1],
+                failure == null ? fpZip.length() : 0, failure);
+    }
 
+    private File getFeaturePackFile(final GAV gav) {
         File fpZip = new File(workDir, Constants.FEATURE_PACKS);
-        final GAV gav = fpDef.getGAV();
 //        String[] parts = gav.getGroupId().split("\\.");
 //        for(String part : parts) {
 //            fpZip = new File(fpZip, part);
@@ -79,57 +320,151 @@ public class FeaturePackBuild {
         fpZip = new File(fpZip, gav.getGroupId());
         fpZip = new File(fpZip, gav.getArtifactId());
         fpZip.mkdirs();
+        return new File(fpZip, gav.getVersion());
+    }
+
+    private File getManifestFile(final GAV gav) {
+        return IoUtils.newFile(workDir, MANIFESTS, gav.getGroupId(), gav.getArtifactId(), gav.getVersion());
+    }
 
-        fpZip = new File(fpZip, gav.getVersion());
-        ZipOutputStream zos = null;
+    private void buildFeaturePack(FeaturePackDef fpDef, File fpZip, final FeaturePackBuildReport report, ExecutorService compressor,
+            ZipReader distZip, final int[] counts) throws PMBuildException {
+        final File manifestFile = getManifestFile(fpDef.getGAV());
+        // the manifest tracks the files of an unpacked installation
+        final FeaturePackManifest previous = distZip == null ? FeaturePackManifest.read(manifestFile) : new FeaturePackManifest();
+        final FeaturePackManifest manifest = new FeaturePackManifest();
+        ZipReader previousZip = null;
+        File tmpZip = null;
+        ParallelZipWriter zip = null;
         try {
-            zos = new ZipOutputStream(new FileOutputStream(fpZip));
+            if(!previous.isEmpty() && fpZip.exists()) {
+                try {
+                    previousZip = new ZipReader(fpZip);
+                } catch(IOException e) {
+                    // the archive will be built from scratch
+                }
+            }
+            tmpZip = File.createTempFile("pm-", ".zip", workDir);
+            final int window = 2 * (compressionExecutor == null ? compressionThreads : Runtime.getRuntime().availableProcessors());
+            zip = new ParallelZipWriter(new ZipWriter(tmpZip), compressor, window, compressionPolicy, workDir);
+            // the index is written first and its offsets are filled in at the end
+            final Map<String, Long> offsets = new HashMap<String, Long>();
+            final long indexOffset = zip.addStored(FeaturePackIndex.ENTRY_NAME, FeaturePackIndex.write(fpDef, offsets));
+            zip.setListener(new ParallelZipWriter.EntryListener() {
+                @Override
+                public void entryWritten(CompressedEntry entry, long offset) {
+                    final String name = entry.getEntry().getName();
+                    offsets.put(name.endsWith("/") ? name.substring(0, name.length() - 1) : name, offset);
+                    ++counts[0];
+                    if(entry.isRaw()) {
+                        ++counts[1];
+                    } else {
+                        report.addCompressed(entry.getReason(), entry.getEntry().getSize(),
+                                entry.getEntry().getCompressedSize(), entry.getNanos());
+                    }
+                    if(entry.getSha1() != null) {
+                        manifest.add(new FeaturePackManifest.Record(entry.getEntry().getName(), entry.getEntry().getSize(),
+                                entry.getLastModified(), entry.getEntry().getCrc(), entry.getSha1()));
+                    }
+                }
+            });
             final Set<String> groupNames = fpDef.getGroupNames();
             for(String groupName : groupNames) {
                 final GroupDef groupDef = fpDef.getGroupDef(groupName);
-                copyGroupContent(zos, groupDef);
+                if(distZip == null) {
+                    copyGroupContent(zip, groupDef, previous, previousZip);
+                } else {
+                    copyDistributionContent(zip, groupDef, distZip);
+                }
+            }
+            zip.replaceStored(indexOffset, FeaturePackIndex.write(fpDef, offsets));
+            zip.finish();
+            zip = null;
+            IoUtils.safeClose(previousZip);
+            previousZip = null;
+
+            if(manifestFile.exists() && !manifestFile.delete()) {
+                throw new IOException("Failed to delete " + manifestFile.getAbsolutePath());
             }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            Files.move(tmpZip.toPath(), fpZip.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            tmpZip = null;
+            if(distZip == null) {
+                manifest.write(manifestFile);
+            }
+        } catch (IOException e) {
+            throw new PMBuildException("Failed to write " + fpZip.getAbsolutePath(), e);
         } finally {
-            try {
-                zos.close();
-            } catch(IOException e) {
+            IoUtils.safeClose(zip);
+            IoUtils.safeClose(previousZip);
+            if(tmpZip != null) {
+                tmpZip.delete();
             }
         }
     }
 
-    private void copyGroupContent(ZipOutputStream zos, GroupDef groupDef) throws PMBuildException {
+    private void copyGroupContent(final ParallelZipWriter zip, GroupDef groupDef,
+            FeaturePackManifest previous, final ZipReader previousZip) throws PMBuildException {
         if(!groupDef.hasContent()) {
             // for now it's skipped due to assumption the group simply references other groups
             // defined in the same feature pack
             return;
         }
-        for(String relativePath : groupDef.getContentPaths()) {
+        for(final String relativePath : groupDef.getContentPaths()) {
             final File src = new File(homeDir, relativePath);
             if(!src.exists()) {
                 throw new PMBuildException("Failed to locate " + src.getAbsolutePath());
             }
             try {
-                zos.putNextEntry(new ZipEntry(relativePath));
-                copy(src, zos);
-                zos.closeEntry();
+                final FeaturePackManifest.Record record = previousZip == null ? null : previous.get(relativePath);
+                final ZipReader.Entry previousEntry = record == null ? null : previousZip.getEntry(relativePath);
+                if(previousEntry == null
+                        || previousEntry.getCrc() != record.crc
+                        || previousEntry.getSize() != record.size
+                        || src.length() != record.size
+                        || !src.isFile()) {
+                    zip.add(relativePath, src);
+                } else if(src.lastModified() == record.lastModified) {
+                    zip.addRaw(relativePath, previousZip, previousEntry, record.lastModified, record.sha1);
+                } else {
+                    // touched but possibly not modified
+                    zip.submit(new Callable<CompressedEntry>() {
+                        @Override
+                        public CompressedEntry call() throws IOException {
+                            final long lastModified = src.lastModified();
+                            final String sha1 = FeaturePackManifest.sha1(src);
+                            if(sha1.equals(record.sha1)) {
+                                return CompressedEntry.raw(relativePath, previousZip, previousEntry, lastModified, sha1);
+                            }
+                            return zip.compress(relativePath, src);
+                        }
+                    });
+                }
             } catch (IOException e) {
                 throw new PMBuildException("Failed to copy " + src.getAbsolutePath() + " to ZIP", e);
             }
         }
     }
 
-    private static void copy(File src, ZipOutputStream zos) throws IOException {
-        try (final BufferedInputStream bis = new BufferedInputStream(new FileInputStream(src))){
-            copyStream(bis, zos);
+    private void copyDistributionContent(final ParallelZipWriter zip, GroupDef groupDef, ZipReader distZip) throws PMBuildException {
+        if(!groupDef.hasContent()) {
+            return;
+        }
+        for(String relativePath : groupDef.getContentPaths()) {
+            try {
+                String name = relativePath;
+                ZipReader.Entry entry = distZip.getEntry(distributionHome + name);
+                if(entry == null) {
+                    // empty directory
+                    name = relativePath + '/';
+                    entry = distZip.getEntry(distributionHome + name);
+                    if(entry == null) {
+                        throw new PMBuildException("Failed to locate " + distributionHome + relativePath + " in " + distZip.getFile().getAbsolutePath());
+                    }
+                }
+                zip.addRaw(name, distZip, entry, entry.getTime(), null);
+            } catch (IOException e) {
+                throw new PMBuildException("Failed to copy " + distributionHome + relativePath + " to ZIP", e);
+            }
         }
-    }
-
-    private static void copyStream(InputStream is, OutputStream os) throws IOException {
-        byte[] buff = new byte[DEFAULT_BUFFER_SIZE];
-        int rc;
-        while ((rc = is.read(buff)) != -1) os.write(buff, 0, rc);
-        os.flush();
     }
 }
@@ -0,0 +1,263 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.build;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.pm.GAV;
+import org.jboss.pm.util.BufferPool;
+
+/**
+ * Outcome and timings of a {@link FeaturePackBuild} run.
+ *
+ * @author Alexey Loubyansky
+ */
+public class FeaturePackBuildReport {
+
+    /**
+     * Outcome of building a single feature pack.
+     */
+    public static class PackResult {
+
+        private final GAV gav;
+        private final long buildMillis;
+        private final int entries;
+        private final int reusedEntries;
+        private final long archiveSize;
+        private final Throwable failure;
+
+        PackResult(GAV gav, long buildMillis, int entries, int reusedEntries, long archiveSize, Throwable failure) {
+            assert gav != null : "gav is null";
+            this.gav = gav;
+            this.buildMillis = buildMillis;
+            this.entries = entries;
+            this.reusedEntries = reusedEntries;
+            this.archiveSize = archiveSize;
+            this.failure = failure;
+        }
+
+        public GAV getGAV() {
+            return gav;
+        }
+
+        public long getBuildMillis() {
+            return buildMillis;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * Number of entries copied from the previously built archive
+         * or the distribution ZIP without being compressed again.
+         */
+        public int getReusedEntries() {
+            return reusedEntries;
+        }
+
+        public long getArchiveSize() {
+            return archiveSize;
+        }
+
+        public boolean isFailed() {
+            return failure != null;
+        }
+
+        public Throwable getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * Compressed entries grouped by the reason of the
+     * {@link CompressionPolicy} decision.
+     */
+    public static class CompressionStats {
+
+        private final String reason;
+        private int entries;
+        private long bytesIn;
+        private long bytesOut;
+        private long nanos;
+
+        CompressionStats(String reason) {
+            this.reason = reason;
+        }
+
+        CompressionStats(CompressionStats other) {
+            this.reason = other.reason;
+            this.entries = other.entries;
+            this.bytesIn = other.bytesIn;
+            this.bytesOut = other.bytesOut;
+            this.nanos = other.nanos;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public long getBytesSaved() {
+            return bytesIn - bytesOut;
+        }
+
+        /**
+         * Time spent compressing the entries summed across the threads.
+         */
+        public long getMillis() {
+            return nanos / 1000000;
+        }
+    }
+
+    private final List<PackResult> results = new ArrayList<PackResult>();
+    private final Map<String, CompressionStats> compression = new TreeMap<String, CompressionStats>();
+    private List<BufferPool.Stats> bufferPoolStats = Collections.emptyList();
+    private long totalMillis;
+
+    FeaturePackBuildReport() {
+    }
+
+    synchronized void addResult(PackResult result) {
+        results.add(result);
+    }
+
+    synchronized void addCompressed(String reason, long bytesIn, long bytesOut, long nanos) {
+        CompressionStats stats = compression.get(reason);
+        if(stats == null) {
+            stats = new CompressionStats(reason);
+            compression.put(reason, stats);
+        }
+        ++stats.entries;
+        stats.bytesIn += bytesIn;
+        stats.bytesOut += bytesOut;
+        stats.nanos += nanos;
+    }
+
+    void setTotalMillis(long totalMillis) {
+        this.totalMillis = totalMillis;
+    }
+
+    synchronized void setBufferPoolStats(List<BufferPool.Stats> bufferPoolStats) {
+        this.bufferPoolStats = bufferPoolStats;
+    }
+
+    public synchronized List<PackResult> getResults() {
+        return Collections.unmodifiableList(new ArrayList<PackResult>(results));
+    }
+
+    /**
+     * Statistics of the entries compressed during the build, entries
+     * reused from the previously built archives are not included.
+     */
+    public synchronized List<CompressionStats> getCompressionStats() {
+        final List<CompressionStats> list = new ArrayList<CompressionStats>(compression.size());
+        for(CompressionStats stats : compression.values()) {
+            list.add(new CompressionStats(stats));
+        }
+        return list;
+    }
+
+    /**
+     * Use of the {@link org.jboss.pm.util.IoUtils} buffer pools during the build.
+     * The pools are shared in the JVM, so the counters include the buffers
+     * taken by any concurrent activity.
+     */
+    public synchronized List<BufferPool.Stats> getBufferPoolStats() {
+        return Collections.unmodifiableList(bufferPoolStats);
+    }
+
+    public synchronized boolean hasFailures() {
+        for(PackResult result : results) {
+            if(result.isFailed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wall clock time of the whole build.
+     */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    /**
+     * Sum of the build times of the individual feature packs.
+     * When the packs are built concurrently this is greater than
+     * {@link #getTotalMillis()}.
+     */
+    public synchronized long getCumulativeMillis() {
+        long sum = 0;
+        for(PackResult result : results) {
+            sum += result.getBuildMillis();
+        }
+        return sum;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder buf = new StringBuilder();
+        for(PackResult result : results) {
+            buf.append(result.getGAV()).append(": ");
+            if(result.isFailed()) {
+                buf.append("FAILED");
+                if(result.getFailure().getLocalizedMessage() != null) {
+                    buf.append(" (").append(result.getFailure().getLocalizedMessage()).append(')');
+                }
+            } else {
+                buf.append(result.getEntries()).append(" entries (")
+                    .append(result.getReusedEntries()).append(" reused), ")
+                    .append(result.getArchiveSize()).append(" bytes");
+            }
+            buf.append(" in ").append(result.getBuildMillis()).append("ms\n");
+        }
+        for(CompressionStats stats : compression.values()) {
+            buf.append(stats.getReason()).append(": ").append(stats.getEntries()).append(" entries, ")
+                .append(stats.getBytesIn()).append(" -> ").append(stats.getBytesOut()).append(" bytes (")
+                .append(stats.getBytesSaved()).append(" saved) in ").append(stats.getMillis()).append("ms\n");
+        }
+        for(BufferPool.Stats stats : bufferPoolStats) {
+            buf.append(stats).append('\n');
+        }
+        buf.append("Built ").append(results.size()).append(" feature pack(s) in ").append(totalMillis)
+            .append("ms (cumulative ").append(getCumulativeMillis()).append("ms)");
+        return buf.toString();
+    }
+}
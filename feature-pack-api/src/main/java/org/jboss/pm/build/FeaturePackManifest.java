@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.build;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jboss.pm.util.IoUtils;
+
+/**
+ * Records the content a feature pack archive was built from: for every
+ * entry the size, modification time and SHA-1 of the source file and the CRC
+ * of the entry. It is used to tell which entries of the previously built archive
+ * can be copied as they are into the new one.
+ *
+ * The manifest is stored as text, one entry per line:
+ * <pre>size mtime crc sha1 name</pre>
+ *
+ * @author Alexey Loubyansky
+ */
+class FeaturePackManifest {
+
+    private static final String HEADER = "# pm feature-pack manifest 1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static class Record {
+
+        final String name;
+        final long size;
+        final long lastModified;
+        final long crc;
+        final String sha1;
+
+        Record(String name, long size, long lastModified, long crc, String sha1) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc = crc;
+            this.sha1 = sha1;
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] digest) {
+        final char[] chars = new char[digest.length * 2];
+        for(int i = 0; i < digest.length; ++i) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    static String sha1(File f) throws IOException {
+        final MessageDigest digest = newDigest();
+        IoUtils.digest(f, digest);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Reads the manifest from the file or returns an empty manifest
+     * if the file does not exist or can't be read.
+     */
+    static FeaturePackManifest read(File file) {
+        final FeaturePackManifest manifest = new FeaturePackManifest();
+        if(!file.exists()) {
+            return manifest;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if(!HEADER.equals(line)) {
+                return manifest;
+            }
+            while((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ", 5);
+                if(parts.length != 5) {
+                    return new FeaturePackManifest();
+                }
+                manifest.add(new Record(parts[4], Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                        Long.parseLong(parts[2], 16), parts[3]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            // treat it as missing, the archive will be rebuilt from scratch
+            return new FeaturePackManifest();
+        }
+        return manifest;
+    }
+
+    private final Map<String, Record> records = new LinkedHashMap<String, Record>();
+
+    void add(Record record) {
+        records.put(record.name, record);
+    }
+
+    Record get(String name) {
+        return records.get(name);
+    }
+
+    boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    void write(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for(Record record : records.values()) {
+                writer.write(Long.toString(record.size));
+                writer.write(' ');
+                writer.write(Long.toString(record.lastModified));
+                writer.write(' ');
+                writer.write(Long.toHexString(record.crc));
+                writer.write(' ');
+                writer.write(record.sha1);
+                writer.write(' ');
+                writer.write(record.name);
+                writer.newLine();
+            }
+        } catch (FileNotFoundException e) {
+            throw new IOException("Failed to write " + file.getAbsolutePath(), e);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.build;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.jboss.pm.util.ZipReader;
+import org.jboss.pm.util.ZipWriter;
+
+/**
+ * Scatter/gather ZIP writer. Entries are compressed on the executor's threads
+ * into memory buffers (or spill files for large entries) and appended
+ * to the archive by the thread calling {@link #add(String, File)} in the order
+ * they were added, so the resulting archive does not depend on the scheduling.
+ *
+ * The number of entries compressed ahead of the writer is bounded by the window
+ * which also bounds the amount of memory held by the compressed buffers.
+ *
+ * @author Alexey Loubyansky
+ */
+class ParallelZipWriter implements Closeable {
+
+    /**
+     * Notified on the writing thread about every entry appended to the archive.
+     */
+    interface EntryListener {
+        void entryWritten(CompressedEntry entry, long offset);
+    }
+
+    private static final int DEFAULT_SPILL_THRESHOLD = 4 * 1024 * 1024;
+
+    private final ZipWriter writer;
+    private final ExecutorService executor;
+    private final int window;
+    private final CompressionPolicy policy;
+    private final File spillDir;
+    private final Deque<Future<CompressedEntry>> pending = new ArrayDeque<Future<CompressedEntry>>();
+    private volatile boolean closed;
+    private EntryListener listener;
+
+    /**
+     * @param writer  archive writer
+     * @param executor  executor to compress entries on or null to compress them
+     *                  on the calling thread
+     * @param window  max number of entries compressed ahead of the writer
+     * @param policy  decides how each entry is compressed
+     * @param spillDir  directory for the temporary files of large entries
+     */
+    ParallelZipWriter(ZipWriter writer, ExecutorService executor, int window, CompressionPolicy policy, File spillDir) {
+        assert writer != null : "writer is null";
+        assert policy != null : "policy is null";
+        this.writer = writer;
+        this.executor = executor;
+        this.window = Math.max(window, 1);
+        this.policy = policy;
+        this.spillDir = spillDir;
+    }
+
+    void setListener(EntryListener listener) {
+        this.listener = listener;
+    }
+
+    void add(final String name, final File src) throws IOException {
+        if(executor == null) {
+            write(compress(name, src));
+            return;
+        }
+        submit(new Callable<CompressedEntry>() {
+            @Override
+            public CompressedEntry call() throws Exception {
+                return compress(name, src);
+            }
+        });
+    }
+
+    /**
+     * Adds an entry produced by the task. The task is run on the executor
+     * or, if there is none, on the calling thread.
+     */
+    void submit(final Callable<CompressedEntry> task) throws IOException {
+        if(executor == null) {
+            try {
+                write(task.call());
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Failed to compress entry", e);
+            }
+            return;
+        }
+        while(pending.size() >= window) {
+            writeNext();
+        }
+        pending.add(executor.submit(new Callable<CompressedEntry>() {
+            @Override
+            public CompressedEntry call() throws Exception {
+                if(closed) {
+                    return null;
+                }
+                return task.call();
+            }
+        }));
+    }
+
+    CompressedEntry compress(String name, File src) throws IOException {
+        return CompressedEntry.compress(name, src, policy, DEFAULT_SPILL_THRESHOLD, spillDir);
+    }
+
+    /**
+     * Adds an entry copying the raw content of an entry of another archive.
+     * The source archive has to remain open until the entry has been written.
+     */
+    void addRaw(String name, ZipReader source, ZipReader.Entry sourceEntry, long lastModified, String sha1) throws IOException {
+        final CompressedEntry entry = CompressedEntry.raw(name, source, sourceEntry, lastModified, sha1);
+        if(pending.isEmpty()) {
+            write(entry);
+        } else {
+            pending.add(CompletableFuture.completedFuture(entry));
+        }
+    }
+
+    /**
+     * Adds a stored entry with the content of the buffer after the entries added so far.
+     * The listener is not notified about it.
+     *
+     * @return  offset of the entry's local header
+     */
+    long addStored(String name, byte[] data) throws IOException {
+        while(!pending.isEmpty()) {
+            writeNext();
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        return writer.writeEntry(entry, data, 0, data.length);
+    }
+
+    /**
+     * Replaces the content of an entry added with {@link #addStored(String, byte[])}
+     * once the entries added so far have been written.
+     */
+    void replaceStored(long offset, byte[] data) throws IOException {
+        while(!pending.isEmpty()) {
+            writeNext();
+        }
+        writer.replaceStored(offset, data);
+    }
+
+    /**
+     * Appends the remaining entries, writes the central directory and closes the archive.
+     */
+    void finish() throws IOException {
+        while(!pending.isEmpty()) {
+            writeNext();
+        }
+        writer.close();
+    }
+
+    private void writeNext() throws IOException {
+        final CompressedEntry entry;
+        try {
+            entry = pending.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing entries", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to compress entry", e.getCause());
+        }
+        write(entry);
+    }
+
+    private void write(CompressedEntry entry) throws IOException {
+        final long offset = entry.writeTo(writer);
+        if(listener != null) {
+            listener.entryWritten(entry, offset);
+        }
+    }
+
+    /**
+     * Discards the entries that haven't been appended yet and closes the archive
+     * which is complete only if {@link #finish()} succeeded.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        while(!pending.isEmpty()) {
+            try {
+                final CompressedEntry entry = pending.removeFirst().get();
+                if(entry != null) {
+                    entry.discard();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // already failed
+            }
+        }
+        writer.close();
+    }
+}
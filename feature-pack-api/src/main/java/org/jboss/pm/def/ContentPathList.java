@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.def;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of content paths stored as the pairs of the interned directory
+ * and the interned file name, the paths are concatenated when they are read.
+ * The list created with a pool can only be appended to, its copy returned
+ * by {@link #toUnmodifiable()} is read-only.
+ *
+ * @author Alexey Loubyansky
+ */
+class ContentPathList extends AbstractList<String> implements RandomAccess {
+
+    private final ContentPathPool pool;
+    private String[] dirs;
+    private String[] names;
+    private int size;
+
+    ContentPathList(ContentPathPool pool) {
+        this.pool = pool;
+        dirs = new String[4];
+        names = new String[4];
+    }
+
+    private ContentPathList(String[] dirs, String[] names) {
+        this.pool = null;
+        this.dirs = dirs;
+        this.names = names;
+        this.size = dirs.length;
+    }
+
+    @Override
+    public boolean add(String path) {
+        if(pool == null) {
+            throw new UnsupportedOperationException();
+        }
+        if(size == dirs.length) {
+            dirs = Arrays.copyOf(dirs, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+        final int i = path.lastIndexOf('/');
+        if(i < 0) {
+            dirs[size] = null;
+            names[size] = pool.intern(path);
+        } else {
+            dirs[size] = pool.intern(path.substring(0, i));
+            names[size] = pool.intern(path.substring(i + 1));
+        }
+        ++size;
+        ++modCount;
+        return true;
+    }
+
+    @Override
+    public String get(int index) {
+        if(index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        final String dir = dirs[index];
+        if(dir == null) {
+            return names[index];
+        }
+        return new StringBuilder(dir.length() + 1 + names[index].length()).append(dir).append('/').append(names[index]).toString();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Read-only copy of the list trimmed to its size.
+     */
+    ContentPathList toUnmodifiable() {
+        return new ContentPathList(Arrays.copyOf(dirs, size), Arrays.copyOf(names, size));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.def;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.pm.GAV;
+import org.jboss.pm.util.ZipReader;
+
+/**
+ * Binary index stored as the first entry of a feature pack archive.
+ * It maps each package of the feature pack to its dependencies and content
+ * and each content path to the offset of the local header of its entry,
+ * so that a subset of the packages can be provisioned by seeking straight
+ * to their entries, without reading the central directory of the archive
+ * or the definition of the installation.
+ *
+ * The index is written with {@link DataOutputStream}:
+ * <pre>
+ * int    magic
+ * byte   version
+ * int    number of packages
+ *   UTF    package name
+ *   int    number of dependencies
+ *     UTF    dependency name
+ *   int    number of content paths
+ *     UTF    content path
+ *     long   offset of the entry's local header
+ * </pre>
+ * The size of the index does not depend on the offsets, so it can be written
+ * ahead of the content and its offsets filled in once the content has been written.
+ *
+ * @author Alexey Loubyansky
+ */
+public class FeaturePackIndex {
+
+    public static final String ENTRY_NAME = "pm-index";
+
+    private static final int MAGIC = 0x504d4958;
+    private static final byte VERSION = 1;
+
+    /**
+     * Serializes the index of the feature pack.
+     *
+     * @param fpDef  feature pack definition
+     * @param offsets  offsets of the entries by content path, missing offsets are written as 0
+     * @return  serialized index
+     */
+    public static byte[] write(FeaturePackDef fpDef, Map<String, Long> offsets) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            final List<String> names = new ArrayList<String>(fpDef.getGroupNames());
+            Collections.sort(names);
+            out.writeInt(names.size());
+            for(String name : names) {
+                final GroupDef groupDef = fpDef.getGroupDef(name);
+                out.writeUTF(name);
+                out.writeInt(groupDef.getDependencies().size());
+                for(String dependency : groupDef.getDependencies()) {
+                    out.writeUTF(dependency);
+                }
+                if(!groupDef.hasContent()) {
+                    out.writeInt(0);
+                    continue;
+                }
+                out.writeInt(groupDef.getContentPaths().size());
+                for(String path : groupDef.getContentPaths()) {
+                    out.writeUTF(path);
+                    final Long offset = offsets.get(path);
+                    out.writeLong(offset == null ? 0 : offset);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the index of the feature pack archive.
+     *
+     * @param gav  feature pack GAV
+     * @param zip  feature pack archive
+     * @return  the index or null if the archive does not start with an index
+     * @throws IOException  in case of a failure
+     */
+    public static FeaturePackIndex read(GAV gav, ZipReader zip) throws IOException {
+        final ZipReader.Entry entry = zip.readLocalEntry(0);
+        if(!ENTRY_NAME.equals(entry.getName())) {
+            return null;
+        }
+        // the index is read by the primitive, the archive's streams are not buffered
+        try (InputStream is = new BufferedInputStream(zip.open(entry), (int) Math.max(Math.min(entry.getSize(), 65536), 1))) {
+            return read(gav, is);
+        }
+    }
+
+    public static FeaturePackIndex read(GAV gav, InputStream is) throws IOException {
+        final DataInputStream in = new DataInputStream(is);
+        if(in.readInt() != MAGIC) {
+            throw new IOException("Not a feature pack index");
+        }
+        final byte version = in.readByte();
+        if(version != VERSION) {
+            throw new IOException("Unsupported feature pack index version " + version);
+        }
+        final FeaturePackDef.FeaturePackDefBuilder fpBuilder = FeaturePackDef.builder(gav);
+        final Map<String, Long> offsets = new HashMap<String, Long>();
+        final ContentPathPool pathPool = new ContentPathPool();
+        int packages = in.readInt();
+        while(packages-- > 0) {
+            final PackageDef.PackageDefBuilder pkgBuilder = PackageDef.packageBuilder(in.readUTF(), pathPool);
+            int dependencies = in.readInt();
+            while(dependencies-- > 0) {
+                pkgBuilder.addDependency(in.readUTF());
+            }
+            int paths = in.readInt();
+            while(paths-- > 0) {
+                final String path = in.readUTF();
+                pkgBuilder.addContentPath(path);
+                offsets.put(path, in.readLong());
+            }
+            fpBuilder.addGroup(pkgBuilder.build());
+        }
+        return new FeaturePackIndex(fpBuilder.build(), offsets);
+    }
+
+    private final FeaturePackDef fpDef;
+    private final Map<String, Long> offsets;
+
+    private FeaturePackIndex(FeaturePackDef fpDef, Map<String, Long> offsets) {
+        this.fpDef = fpDef;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Packages of the feature pack with their dependencies and content paths.
+     */
+    public FeaturePackDef getFeaturePackDef() {
+        return fpDef;
+    }
+
+    /**
+     * Offset of the local header of the entry of the content path or -1
+     * if the path is not in the index.
+     */
+    public long getOffset(String path) {
+        final Long offset = offsets.get(path);
+        return offset == null ? -1 : offset;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.def;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.pm.GAV;
+import org.jboss.pm.util.IoUtils;
+
+/**
+ * Binary snapshot of an installation definition, so that the definition
+ * does not have to be built again by scanning the installation when
+ * nothing it was built from has changed.
+ *
+ * The snapshot is stored with a key, e.g. a digest of the configuration
+ * the definition was built with, and a fingerprint of the installation,
+ * i.e. the modification times of the scanned directories and files
+ * by their paths. It is loaded only if its key equals the expected one
+ * and its fingerprint is accepted.
+ * <pre>
+ * int    magic
+ * byte   version
+ * int    length of the key
+ *   byte[] key
+ * int    number of fingerprint entries
+ *   UTF    path
+ *   long   modification time
+ * int    number of feature packs
+ *   GAV    feature pack GAV, i.e. groupId, artifactId and version each as a boolean telling whether it is set and the UTF value if it is
+ *   int    number of dependencies
+ *     GAV    dependency
+ *   int    number of groups
+ *     UTF    name
+ *     boolean whether the group is a package
+ *     int    number of dependencies
+ *       UTF    dependency
+ *     int    number of content paths, only for packages
+ *       UTF    content path
+ * </pre>
+ *
+ * @author Alexey Loubyansky
+ */
+public class InstallationDefSnapshot {
+
+    /**
+     * Tells whether the installation still matches the fingerprint
+     * it had when the snapshot was taken.
+     */
+    public interface FingerprintCheck {
+        boolean matches(Map<String, Long> fingerprint) throws IOException;
+    }
+
+    private static final int MAGIC = 0x504d4453;
+    private static final byte VERSION = 2;
+
+    /**
+     * Reads the definition from the snapshot.
+     *
+     * @param file  snapshot file
+     * @param key  expected key
+     * @param check  check of the fingerprint
+     * @return  the definition or null if the file does not exist, is not a snapshot
+     *     of this version, its key is different or its fingerprint does not match
+     * @throws IOException  in case of a failure
+     */
+    public static InstallationDef read(File file, byte[] key, FingerprintCheck check) throws IOException {
+        if(!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 65536))) {
+            if(in.readInt() != MAGIC || in.readByte() != VERSION) {
+                return null;
+            }
+            final byte[] snapshotKey = new byte[in.readInt()];
+            in.readFully(snapshotKey);
+            if(!Arrays.equals(key, snapshotKey)) {
+                return null;
+            }
+            int entries = in.readInt();
+            final Map<String, Long> fingerprint = new HashMap<String, Long>(entries * 4 / 3 + 1);
+            while(entries-- > 0) {
+                fingerprint.put(in.readUTF(), in.readLong());
+            }
+            if(!check.matches(fingerprint)) {
+                return null;
+            }
+            final InstallationDefBuilder builder = InstallationDefBuilder.newInstance();
+            final ContentPathPool pathPool = new ContentPathPool();
+            int featurePacks = in.readInt();
+            while(featurePacks-- > 0) {
+                final FeaturePackDef.FeaturePackDefBuilder fpBuilder = FeaturePackDef.builder(readGAV(in));
+                int dependencies = in.readInt();
+                while(dependencies-- > 0) {
+                    fpBuilder.addDependency(readGAV(in));
+                }
+                int groups = in.readInt();
+                while(groups-- > 0) {
+                    final String name = in.readUTF();
+                    final GroupDef.GroupDefBuilder groupBuilder = in.readBoolean() ?
+                            PackageDef.packageBuilder(name, pathPool) : GroupDef.groupBuilder(name);
+                    int groupDependencies = in.readInt();
+                    while(groupDependencies-- > 0) {
+                        groupBuilder.addDependency(in.readUTF());
+                    }
+                    if(groupBuilder instanceof PackageDef.PackageDefBuilder) {
+                        final PackageDef.PackageDefBuilder pkgBuilder = (PackageDef.PackageDefBuilder) groupBuilder;
+                        int paths = in.readInt();
+                        while(paths-- > 0) {
+                            pkgBuilder.addContentPath(in.readUTF());
+                        }
+                    }
+                    fpBuilder.addGroup(groupBuilder.build());
+                }
+                builder.addFeaturePack(fpBuilder.build());
+            }
+            return builder.build();
+        } catch (EOFException e) {
+            // a truncated snapshot is rebuilt
+            return null;
+        } catch (InstallationDefException e) {
+            throw new IOException("Failed to read installation definition snapshot " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Writes the snapshot of the definition. The file is replaced atomically,
+     * so that a concurrent reader never sees a partially written snapshot.
+     *
+     * @param file  snapshot file
+     * @param key  key of the snapshot
+     * @param fingerprint  modification times of the installation directories and files by their paths
+     * @param def  installation definition
+     * @throws IOException  in case of a failure
+     */
+    public static void write(File file, byte[] key, Map<String, Long> fingerprint, InstallationDef def) throws IOException {
+        final File dir = file.getAbsoluteFile().getParentFile();
+        IoUtils.mkdir(dir);
+        final File tmp = new File(dir, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(fingerprint.size());
+            for(Map.Entry<String, Long> entry : fingerprint.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.writeInt(def.getFeaturePackDefs().size());
+            for(FeaturePackDef fpDef : def.getFeaturePackDefs()) {
+                writeGAV(out, fpDef.getGAV());
+                out.writeInt(fpDef.getDependencies().size());
+                for(GAV dependency : fpDef.getDependencies()) {
+                    writeGAV(out, dependency);
+                }
+                out.writeInt(fpDef.getGroupNames().size());
+                for(String name : fpDef.getGroupNames()) {
+                    final GroupDef groupDef = fpDef.getGroupDef(name);
+                    out.writeUTF(name);
+                    out.writeBoolean(groupDef instanceof PackageDef);
+                    out.writeInt(groupDef.getDependencies().size());
+                    for(String dependency : groupDef.getDependencies()) {
+                        out.writeUTF(dependency);
+                    }
+                    if(groupDef instanceof PackageDef) {
+                        out.writeInt(groupDef.getContentPaths().size());
+                        for(String path : groupDef.getContentPaths()) {
+                            out.writeUTF(path);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static GAV readGAV(DataInputStream in) throws IOException {
+        return new GAV(readString(in), readString(in), readString(in));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeGAV(DataOutputStream out, GAV gav) throws IOException {
+        writeString(out, gav.getGroupId());
+        writeString(out, gav.getArtifactId());
+        writeString(out, gav.getVersion());
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if(str != null) {
+            out.writeUTF(str);
+        }
+    }
+}
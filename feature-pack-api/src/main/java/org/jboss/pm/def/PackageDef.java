@@ -23,7 +23,6 @@
 package org.jboss.pm.def;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -35,29 +34,34 @@ public class PackageDef extends GroupDef {
 
     public static class PackageDefBuilder extends GroupDef.GroupDefBuilder {
 
-        private List<String> contentPaths = Collections.emptyList();
+        private ContentPathPool pathPool;
+        private ContentPathList contentPaths;
 
         protected PackageDefBuilder(String name) {
+            this(name, null);
+        }
+
+        protected PackageDefBuilder(String name, ContentPathPool pathPool) {
             super(name);
+            this.pathPool = pathPool;
         }
 
         public PackageDefBuilder addContentPath(String contentPath) {
             assert contentPath != null : "contentPath is null";
-            switch(contentPaths.size()) {
-                case 0:
-                    contentPaths = Collections.singletonList(contentPath);
-                    break;
-                case 1:
-                    contentPaths = new ArrayList<String>(contentPaths);
-                default:
-                    contentPaths.add(contentPath);
+            if(contentPaths == null) {
+                if(pathPool == null) {
+                    pathPool = new ContentPathPool();
+                }
+                contentPaths = new ContentPathList(pathPool);
             }
+            contentPaths.add(contentPath);
             return this;
         }
 
         @Override
         public PackageDef build() {
-            return new PackageDef(name, dependencies, Collections.unmodifiableList(contentPaths));
+            return new PackageDef(name, dependencies,
+                    contentPaths == null ? Collections.<String>emptyList() : contentPaths.toUnmodifiable());
         }
     }
 
@@ -65,6 +69,15 @@ public class PackageDef extends GroupDef {
         return new PackageDefBuilder(name);
     }
 
+    /**
+     * Builder whose content paths share their directories and file names
+     * with the content paths of the other packages built with the pool.
+     */
+    public static PackageDefBuilder packageBuilder(String name, ContentPathPool pathPool) {
+        assert pathPool != null : "pathPool is null";
+        return new PackageDefBuilder(name, pathPool);
+    }
+
     private final List<String> contentPaths;
 
     protected PackageDef(String name, List<String> dependencies, List<String> contentPaths) {
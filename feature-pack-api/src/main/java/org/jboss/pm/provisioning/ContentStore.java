@@ -0,0 +1,328 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.provisioning;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.pm.Constants;
+import org.jboss.pm.GAV;
+import org.jboss.pm.util.IoUtils;
+import org.jboss.pm.util.ZipExtractor;
+import org.jboss.pm.util.ZipReader;
+
+/**
+ * Local content-addressable store of provisioned files. Each file extracted
+ * from a feature pack is stored once under its SHA-1 and installations are
+ * materialized by hard links to the stored files, or by copies where the
+ * file system does not support links to the store. Provisioning several
+ * installations from the same feature packs then costs one extraction
+ * and the file system operations to link the files.
+ *
+ * For every feature pack the store records the SHA-1 of its entries along with
+ * their size and CRC, so that the entries of a feature pack provisioned before
+ * don't have to be extracted again.
+ *
+ * Linked files share their content with the store and the other installations,
+ * so the stored files are made read-only and the files that are modified in place
+ * after provisioning are copied instead. By default these are the configuration
+ * and data directories, see {@link #DEFAULT_COPIED_PATHS}.
+ *
+ * @author Alexey Loubyansky
+ */
+public class ContentStore {
+
+    private static final String FEATURE_PACKS = "featurepacks";
+    private static final String OBJECTS = "objects";
+    private static final String TMP = "tmp";
+    private static final String HEADER = "# pm content store feature-pack 1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Paths copied to the installations unless {@link #clearCopiedPaths()} is called.
+     */
+    public static final List<String> DEFAULT_COPIED_PATHS = Collections.unmodifiableList(Arrays.asList(
+            "appclient/configuration", "domain/configuration", "domain/data",
+            "standalone/configuration", "standalone/data"));
+
+    private static class Record {
+
+        final long size;
+        final long crc;
+        final String sha1;
+
+        Record(long size, long crc, String sha1) {
+            this.size = size;
+            this.crc = crc;
+            this.sha1 = sha1;
+        }
+    }
+
+    /**
+     * Store at the location of the pm.store.dir system property
+     * or ~/.pm/store if the property is not set.
+     */
+    public static ContentStore getDefault() {
+        final String storeDir = System.getProperty(Constants.PM_STORE_DIR);
+        if(storeDir != null) {
+            return new ContentStore(new File(storeDir));
+        }
+        return new ContentStore(IoUtils.newFile(new File(System.getProperty("user.home")), ".pm", "store"));
+    }
+
+    private final File storeDir;
+    private final List<String> copiedPaths = new ArrayList<String>(DEFAULT_COPIED_PATHS);
+    private volatile boolean linksSupported = true;
+
+    public ContentStore(File storeDir) {
+        assert storeDir != null : "storeDir is null";
+        this.storeDir = storeDir;
+    }
+
+    public File getStoreDir() {
+        return storeDir;
+    }
+
+    /**
+     * Files at the path or under it, if it is a directory, are copied
+     * to the installation instead of being linked.
+     *
+     * @param path  path relative to the installation directory
+     * @return  this store
+     */
+    public ContentStore addCopiedPath(String path) {
+        assert path != null : "path is null";
+        copiedPaths.add(path);
+        return this;
+    }
+
+    /**
+     * Removes the copied paths including the {@link #DEFAULT_COPIED_PATHS}.
+     *
+     * @return  this store
+     */
+    public ContentStore clearCopiedPaths() {
+        copiedPaths.clear();
+        return this;
+    }
+
+    public List<String> getCopiedPaths() {
+        return Collections.unmodifiableList(copiedPaths);
+    }
+
+    /**
+     * Installs the entries of the feature pack into the installation directory.
+     * The entries that are not in the store yet, or whose stored file does not
+     * have the expected size, are extracted into the store first.
+     * Existing files in the installation directory are replaced, never written to,
+     * and only if they are recorded in the given state.
+     *
+     * @param gav  feature pack GAV
+     * @param zip  feature pack archive
+     * @param entries  entries to install
+     * @param installDir  installation directory
+     * @param extractor  extractor for the entries missing from the store
+     * @param replaceable  state of the files that may be replaced or null if any file may be replaced
+     * @throws IOException  in case of a failure
+     */
+    public void install(GAV gav, ZipReader zip, Collection<ZipReader.Entry> entries, File installDir, ZipExtractor extractor,
+            InstallationState replaceable) throws IOException {
+        final File fpFile = IoUtils.newFile(storeDir, FEATURE_PACKS, gav.getGroupId(), gav.getArtifactId(), gav.getVersion());
+        final Map<String, Record> records = readRecords(fpFile);
+        final List<ZipReader.Entry> missing = new ArrayList<ZipReader.Entry>();
+        for(ZipReader.Entry entry : entries) {
+            if(entry.isDirectory()) {
+                continue;
+            }
+            final Record record = records.get(entry.getName());
+            if(record == null || record.size != entry.getSize() || record.crc != entry.getCrc()
+                    || !isStored(getObjectFile(record.sha1), record.size)) {
+                missing.add(entry);
+            }
+        }
+        if(!missing.isEmpty()) {
+            store(zip, missing, extractor, records);
+            writeRecords(fpFile, records);
+        }
+
+        final Path target = installDir.toPath();
+        for(ZipReader.Entry entry : entries) {
+            final Path path = target.resolve(entry.getName());
+            if(entry.isDirectory()) {
+                Files.createDirectories(path);
+                continue;
+            }
+            Files.createDirectories(path.getParent());
+            if(replaceable == null || replaceable.get(entry.getName()) != null) {
+                Files.deleteIfExists(path);
+            } else if(Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(path.toString());
+            }
+            final Path object = getObjectFile(records.get(entry.getName()).sha1).toPath();
+            if(linksSupported && !isCopied(entry.getName())) {
+                try {
+                    Files.createLink(path, object);
+                    continue;
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    // e.g. the store is on another file system
+                    linksSupported = false;
+                }
+            }
+            Files.copy(object, path);
+            // the copy inherits the permissions of the read-only object
+            path.toFile().setWritable(true);
+        }
+    }
+
+    private void store(ZipReader zip, List<ZipReader.Entry> entries, ZipExtractor extractor, Map<String, Record> records) throws IOException {
+        final File tmpDir = IoUtils.mkdir(storeDir, TMP);
+        final File stagingDir = Files.createTempDirectory(tmpDir.toPath(), "extract").toFile();
+        try {
+            extractor.extract(zip, entries, stagingDir);
+            for(ZipReader.Entry entry : entries) {
+                final File staged = new File(stagingDir, entry.getName());
+                final String sha1 = sha1(staged);
+                final File object = getObjectFile(sha1);
+                if(!isStored(object, entry.getSize())) {
+                    IoUtils.mkdir(object.getParentFile());
+                    // installations link the object, so it must not be modified through them
+                    staged.setReadOnly();
+                    try {
+                        // replaces a damaged object
+                        Files.move(staged.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    } catch (FileAlreadyExistsException e) {
+                        // stored concurrently
+                    }
+                }
+                records.put(entry.getName(), new Record(entry.getSize(), entry.getCrc(), sha1));
+            }
+        } finally {
+            IoUtils.recursiveDelete(stagingDir);
+        }
+    }
+
+    private boolean isCopied(String name) {
+        for(String path : copiedPaths) {
+            if(name.equals(path) || name.startsWith(path.endsWith("/") ? path : path + '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStored(File object, long size) {
+        return object.isFile() && object.length() == size;
+    }
+
+    private File getObjectFile(String sha1) {
+        return IoUtils.newFile(storeDir, OBJECTS, sha1.substring(0, 2), sha1.substring(2));
+    }
+
+    private static Map<String, Record> readRecords(File file) throws IOException {
+        final Map<String, Record> records = new HashMap<String, Record>();
+        if(!file.exists()) {
+            return records;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if(!HEADER.equals(line)) {
+                // the entries will be stored again
+                return records;
+            }
+            while((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ", 4);
+                if(parts.length != 4) {
+                    return new HashMap<String, Record>();
+                }
+                records.put(parts[3], new Record(Long.parseLong(parts[0]), Long.parseLong(parts[1], 16), parts[2]));
+            }
+        } catch (NumberFormatException e) {
+            return new HashMap<String, Record>();
+        }
+        return records;
+    }
+
+    private static void writeRecords(File file, Map<String, Record> records) throws IOException {
+        IoUtils.mkdir(file.getParentFile());
+        final File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+                writer.write(HEADER);
+                writer.newLine();
+                for(Map.Entry<String, Record> entry : records.entrySet()) {
+                    final Record record = entry.getValue();
+                    writer.write(Long.toString(record.size));
+                    writer.write(' ');
+                    writer.write(Long.toHexString(record.crc));
+                    writer.write(' ');
+                    writer.write(record.sha1);
+                    writer.write(' ');
+                    writer.write(entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private static String sha1(File f) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        IoUtils.digest(f, digest);
+        final byte[] bytes = digest.digest();
+        final char[] chars = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; ++i) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.provisioning;
+
+import java.io.File;
+
+import org.jboss.pm.GAV;
+
+/**
+ * Repository the feature packs are resolved from and installed to.
+ *
+ * Implementations are called concurrently by the {@link ProvisioningEngine}.
+ *
+ * @author Alexey Loubyansky
+ */
+public interface FeaturePackRepository {
+
+    /**
+     * Locates the feature pack archive.
+     *
+     * @param gav  feature pack GAV
+     * @return  feature pack archive
+     * @throws ProvisioningException  if the feature pack could not be resolved
+     */
+    File resolve(GAV gav) throws ProvisioningException;
+
+    /**
+     * Installs the feature pack archive into the repository.
+     *
+     * @param gav  feature pack GAV
+     * @param featurePack  feature pack archive
+     * @throws ProvisioningException  if the feature pack could not be installed
+     */
+    void install(GAV gav, File featurePack) throws ProvisioningException;
+}
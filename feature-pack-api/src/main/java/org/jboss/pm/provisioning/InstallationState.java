@@ -0,0 +1,330 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.provisioning;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.jboss.pm.util.IoUtils;
+
+/**
+ * Records the files of a provisioned installation with the size and CRC
+ * of the feature pack entries they were extracted from, the modification
+ * time of the installed files and the feature pack and package they belong to.
+ * It is stored in the installation directory and is used to tell which files
+ * have to be written or deleted when the installation is provisioned again
+ * and which files have been modified since.
+ *
+ * The state is stored in a binary file which is read into memory in one go.
+ * It is not mapped, so that it can be replaced while the state read from it is in use:
+ * <pre>
+ * int    magic
+ * byte   version
+ * int    number of strings, i.e. the names of the feature packs and packages
+ *   short  length of the UTF-8 bytes
+ *   byte[] UTF-8 bytes
+ * int    number of files, sorted by path
+ *   short  length of the UTF-8 bytes of the path
+ *   byte[] UTF-8 bytes of the path
+ *   long   size
+ *   long   modification time or -1
+ *   int    CRC
+ *   int    index of the feature pack string or -1
+ *   int    index of the package string or -1
+ * </pre>
+ *
+ * @author Alexey Loubyansky
+ */
+public class InstallationState {
+
+    public static final String STATE_DIR = ".pm";
+    public static final String STATE_FILE = "state";
+
+    private static final int MAGIC = 0x504d5354;
+    private static final byte VERSION = 1;
+
+    public static class Record {
+
+        final long size;
+        final long crc;
+        final long lastModified;
+        final String featurePack;
+        final String packageName;
+
+        public Record(long size, long crc) {
+            this(size, crc, -1, null, null);
+        }
+
+        public Record(long size, long crc, long lastModified, String featurePack, String packageName) {
+            this.size = size;
+            this.crc = crc;
+            this.lastModified = lastModified;
+            this.featurePack = featurePack;
+            this.packageName = packageName;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        /**
+         * Modification time of the installed file or -1 if it is not known.
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Feature pack the file belongs to or null if it is not known.
+         */
+        public String getFeaturePack() {
+            return featurePack;
+        }
+
+        /**
+         * Package the file belongs to or null if it is not known.
+         */
+        public String getPackageName() {
+            return packageName;
+        }
+    }
+
+    public static File getStateFile(File installDir) {
+        return IoUtils.newFile(installDir, STATE_DIR, STATE_FILE);
+    }
+
+    /**
+     * Reads the state of the installation or returns an empty state
+     * if the installation has not been provisioned.
+     */
+    public static InstallationState read(File installDir) throws IOException {
+        final InstallationState state = new InstallationState();
+        final File file = getStateFile(installDir);
+        if(!file.exists()) {
+            return state;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if(fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Installation state is too large " + file.getAbsolutePath());
+            }
+            final ByteBuffer buf = ByteBuffer.allocate((int) fileSize);
+            while(buf.hasRemaining()) {
+                if(channel.read(buf) < 0) {
+                    throw new IOException("Installation state was truncated while reading " + file.getAbsolutePath());
+                }
+            }
+            buf.flip();
+            if(buf.remaining() < 5 || buf.getInt() != MAGIC) {
+                throw new IOException("Not an installation state " + file.getAbsolutePath());
+            }
+            final byte version = buf.get();
+            if(version != VERSION) {
+                throw new IOException("Unsupported installation state version " + version + " of " + file.getAbsolutePath());
+            }
+            final String[] strings = new String[buf.getInt()];
+            for(int i = 0; i < strings.length; ++i) {
+                strings[i] = getString(buf);
+            }
+            int records = buf.getInt();
+            while(records-- > 0) {
+                final String path = getString(buf);
+                final long size = buf.getLong();
+                final long lastModified = buf.getLong();
+                final long crc = buf.getInt() & 0xFFFFFFFFL;
+                final int featurePack = buf.getInt();
+                final int packageName = buf.getInt();
+                state.records.put(path, new Record(size, crc, lastModified,
+                        featurePack < 0 ? null : strings[featurePack], packageName < 0 ? null : strings[packageName]));
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid installation state " + file.getAbsolutePath(), e);
+        }
+        return state;
+    }
+
+    private static String getString(ByteBuffer buf) {
+        final byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final Map<String, Record> records;
+
+    public InstallationState() {
+        this(new TreeMap<String, Record>());
+    }
+
+    public InstallationState(Map<String, Record> records) {
+        assert records != null : "records is null";
+        this.records = records;
+    }
+
+    public void put(String path, Record record) {
+        records.put(path, record);
+    }
+
+    /**
+     * Records the file unless it has already been recorded.
+     *
+     * @return  the record of the path recorded earlier or null
+     */
+    public Record putIfAbsent(String path, Record record) {
+        return records.putIfAbsent(path, record);
+    }
+
+    public Record get(String path) {
+        return records.get(path);
+    }
+
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(records.keySet());
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Whether the file at the path was extracted from an entry with the same size
+     * and CRC and its size and, if recorded, modification time on disk have not
+     * changed since.
+     */
+    public boolean isUpToDate(File installDir, String path, long size, long crc) {
+        final Record record = records.get(path);
+        if(record == null || record.size != size || record.crc != crc) {
+            return false;
+        }
+        final File f = new File(installDir, path);
+        return f.isFile() && f.length() == size && (record.lastModified < 0 || f.lastModified() == record.lastModified);
+    }
+
+    /**
+     * Records the current modification times of the files in the directory.
+     */
+    public void recordLastModified(File installDir) {
+        for(Map.Entry<String, Record> entry : records.entrySet()) {
+            final Record record = entry.getValue();
+            entry.setValue(new Record(record.size, record.crc, new File(installDir, entry.getKey()).lastModified(),
+                    record.featurePack, record.packageName));
+        }
+    }
+
+    /**
+     * Deletes the files recorded in this state which are not recorded
+     * in the other one and the directories left empty.
+     *
+     * @return  paths of the deleted files
+     */
+    public List<String> deleteRemoved(File installDir, InstallationState other) throws IOException {
+        final List<String> deleted = new ArrayList<String>();
+        for(String path : records.keySet()) {
+            if(other.records.containsKey(path)) {
+                continue;
+            }
+            File f = new File(installDir, path);
+            if(f.exists() && !f.delete()) {
+                throw new IOException("Failed to delete " + f.getAbsolutePath());
+            }
+            deleted.add(path);
+            f = f.getParentFile();
+            while(f != null && !f.equals(installDir) && f.delete()) {
+                f = f.getParentFile();
+            }
+        }
+        return deleted;
+    }
+
+    public void write(File installDir) throws IOException {
+        final File file = getStateFile(installDir);
+        IoUtils.mkdir(file.getParentFile());
+        final Map<String, Record> sorted = new TreeMap<String, Record>(records);
+        final List<String> strings = new ArrayList<String>();
+        final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+        for(Record record : sorted.values()) {
+            addString(record.featurePack, strings, stringIndex);
+            addString(record.packageName, strings, stringIndex);
+        }
+        final File tmp = new File(file.getParentFile(), STATE_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(strings.size());
+            for(String str : strings) {
+                writeString(out, str);
+            }
+            out.writeInt(sorted.size());
+            for(Map.Entry<String, Record> entry : sorted.entrySet()) {
+                final Record record = entry.getValue();
+                writeString(out, entry.getKey());
+                out.writeLong(record.size);
+                out.writeLong(record.lastModified);
+                out.writeInt((int) record.crc);
+                out.writeInt(record.featurePack == null ? -1 : stringIndex.get(record.featurePack));
+                out.writeInt(record.packageName == null ? -1 : stringIndex.get(record.packageName));
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void addString(String str, List<String> strings, Map<String, Integer> stringIndex) {
+        if(str != null && !stringIndex.containsKey(str)) {
+            stringIndex.put(str, strings.size());
+            strings.add(str);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > 0xFFFF) {
+            throw new IOException("String is too long: " + str);
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.provisioning;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.pm.util.IoUtils;
+
+/**
+ * Compares an installation with its recorded {@link InstallationState}.
+ *
+ * A file whose size and modification time match the recorded ones is
+ * considered intact. Only the files whose size matches but modification time
+ * does not are read to compare their CRC with the recorded one.
+ * The files are checked by several threads.
+ *
+ * @author Alexey Loubyansky
+ */
+public class InstallationVerifier {
+
+    /**
+     * Result of the verification. The paths are relative to the installation
+     * directory, use '/' as the separator and are sorted.
+     */
+    public static class Report {
+
+        private final List<String> modified;
+        private final List<String> missing;
+        private final List<String> extra;
+
+        private Report(List<String> modified, List<String> missing, List<String> extra) {
+            this.modified = modified;
+            this.missing = missing;
+            this.extra = extra;
+        }
+
+        public List<String> getModified() {
+            return modified;
+        }
+
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        /**
+         * Files found in the installation which are not recorded in its state.
+         */
+        public List<String> getExtra() {
+            return extra;
+        }
+
+        public boolean isIntact() {
+            return modified.isEmpty() && missing.isEmpty() && extra.isEmpty();
+        }
+    }
+
+    private static final String MODIFIED = "modified";
+    private static final String MISSING = "missing";
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of threads checking the files.
+     *
+     * @param threads  number of threads
+     * @return  this verifier
+     */
+    public InstallationVerifier setThreads(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be greater than 0: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public Report verify(File installDir) throws ProvisioningException {
+        if(!InstallationState.getStateFile(installDir).exists()) {
+            throw new ProvisioningException(installDir.getAbsolutePath() + " has not been provisioned");
+        }
+        final InstallationState state;
+        try {
+            state = InstallationState.read(installDir);
+        } catch (IOException e) {
+            throw new ProvisioningException("Failed to read the state of " + installDir.getAbsolutePath(), e);
+        }
+        final List<String> paths = new ArrayList<String>(state.getPaths());
+        final String[] results = new String[paths.size()];
+        final AtomicInteger next = new AtomicInteger();
+        final int workers = Math.min(threads, Math.max(paths.size(), 1));
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        final List<String> extra;
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+            for(int i = 0; i < workers; ++i) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        check(installDir, state, paths, results, next);
+                        return null;
+                    }
+                }));
+            }
+            // the extra files are looked for on the calling thread meanwhile
+            try {
+                extra = findExtra(installDir, state);
+            } catch (IOException e) {
+                throw new ProvisioningException("Failed to list the content of " + installDir.getAbsolutePath(), e);
+            }
+            for(Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ProvisioningException("Interrupted while verifying " + installDir.getAbsolutePath(), e);
+                } catch (ExecutionException e) {
+                    throw new ProvisioningException("Failed to verify " + installDir.getAbsolutePath(), e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final List<String> modified = new ArrayList<String>();
+        final List<String> missing = new ArrayList<String>();
+        for(int i = 0; i < results.length; ++i) {
+            if(results[i] == MODIFIED) {
+                modified.add(paths.get(i));
+            } else if(results[i] == MISSING) {
+                missing.add(paths.get(i));
+            }
+        }
+        return new Report(modified, missing, extra);
+    }
+
+    private static void check(File installDir, InstallationState state, List<String> paths, String[] results, AtomicInteger next) throws IOException {
+        int i;
+        while((i = next.getAndIncrement()) < paths.size()) {
+            final String path = paths.get(i);
+            final InstallationState.Record record = state.get(path);
+            final File f = new File(installDir, path);
+            if(!f.isFile()) {
+                results[i] = MISSING;
+                continue;
+            }
+            if(f.length() != record.getSize()) {
+                results[i] = MODIFIED;
+                continue;
+            }
+            if(record.getLastModified() >= 0 && f.lastModified() == record.getLastModified()) {
+                continue;
+            }
+            if(IoUtils.crc32(f) != record.getCrc()) {
+                results[i] = MODIFIED;
+            }
+        }
+    }
+
+    private static List<String> findExtra(File installDir, final InstallationState state) throws IOException {
+        final Path root = installDir.toPath();
+        final Path stateDir = root.resolve(InstallationState.STATE_DIR);
+        final List<String> extra = new ArrayList<String>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.equals(stateDir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                final String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+                if(state.get(path) == null) {
+                    extra.add(path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(extra);
+        return extra;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.provisioning;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.jboss.pm.GAV;
+import org.jboss.pm.util.IoUtils;
+
+/**
+ * Feature pack repository with the Maven repository layout, i.e. the feature pack
+ * org.example:fp:1.0 is stored at org/example/fp/1.0/fp-1.0.zip.
+ * It is used to provision from and install to the local Maven repository
+ * without launching Maven.
+ *
+ * @author Alexey Loubyansky
+ */
+public class LocalFeaturePackRepository implements FeaturePackRepository {
+
+    private static final String MAVEN_REPO_LOCAL = "maven.repo.local";
+    private static final String ZIP = ".zip";
+
+    /**
+     * Repository at the location of the maven.repo.local system property
+     * or ~/.m2/repository if the property is not set.
+     */
+    public static LocalFeaturePackRepository getDefault() {
+        final String repoLocal = System.getProperty(MAVEN_REPO_LOCAL);
+        if(repoLocal != null) {
+            return new LocalFeaturePackRepository(new File(repoLocal));
+        }
+        return new LocalFeaturePackRepository(IoUtils.newFile(new File(System.getProperty("user.home")), ".m2", "repository"));
+    }
+
+    private final File repoDir;
+
+    public LocalFeaturePackRepository(File repoDir) {
+        assert repoDir != null : "repoDir is null";
+        this.repoDir = repoDir;
+    }
+
+    public File getRepoDir() {
+        return repoDir;
+    }
+
+    @Override
+    public File resolve(GAV gav) throws ProvisioningException {
+        final File f = getFeaturePackFile(gav);
+        if(!f.exists()) {
+            throw new ProvisioningException("Feature pack " + gav + " not found in " + repoDir.getAbsolutePath());
+        }
+        return f;
+    }
+
+    @Override
+    public void install(GAV gav, File featurePack) throws ProvisioningException {
+        final File target = getFeaturePackFile(gav);
+        try {
+            IoUtils.mkdir(target.getParentFile());
+            // copied next to the target first so that a concurrent resolve never sees a partial file
+            final File tmp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+            try {
+                Files.copy(featurePack.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            throw new ProvisioningException("Failed to install " + gav + " to " + repoDir.getAbsolutePath(), e);
+        }
+    }
+
+    private File getFeaturePackFile(GAV gav) throws ProvisioningException {
+        if(gav.getArtifactId() == null || gav.getVersion() == null) {
+            throw new ProvisioningException("Incomplete feature pack GAV " + gav);
+        }
+        final String[] groupParts = gav.getGroupId().split("\\.");
+        final String[] segments = new String[groupParts.length + 3];
+        System.arraycopy(groupParts, 0, segments, 0, groupParts.length);
+        segments[groupParts.length] = gav.getArtifactId();
+        segments[groupParts.length + 1] = gav.getVersion();
+        segments[groupParts.length + 2] = gav.getArtifactId() + '-' + gav.getVersion() + ZIP;
+        return IoUtils.newFile(repoDir, segments);
+    }
+}
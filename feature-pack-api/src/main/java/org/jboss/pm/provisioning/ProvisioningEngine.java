@@ -0,0 +1,447 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.provisioning;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jboss.pm.Constants;
+import org.jboss.pm.GAV;
+import org.jboss.pm.def.FeaturePackDef;
+import org.jboss.pm.def.FeaturePackIndex;
+import org.jboss.pm.def.GroupDef;
+import org.jboss.pm.provisioning.xml.ProvisioningXmlParser;
+import org.jboss.pm.util.IoUtils;
+import org.jboss.pm.util.ZipExtractor;
+import org.jboss.pm.util.ZipReader;
+
+/**
+ * Provisions installations from feature packs and installs built feature packs
+ * into a {@link FeaturePackRepository} in the calling JVM.
+ *
+ * Feature packs are provisioned as a pipeline: each feature pack is extracted
+ * as soon as it has been resolved while the other ones may still be resolving.
+ *
+ * If packages are selected for a feature pack, only the content of the selected
+ * packages and the packages they depend on, transitively, is extracted.
+ * The entries are located with the {@link FeaturePackIndex} of the archive.
+ * Excluded packages are not extracted and their dependencies are not followed.
+ *
+ * The provisioned files are recorded in the {@link InstallationState} of the
+ * installation. When an installation is provisioned again only the files
+ * whose content differs from the recorded state are written and the files
+ * which are no longer provided by the feature packs are deleted.
+ *
+ * In the staged mode the installation is provisioned in a staging directory
+ * next to it and switched into place only once it is complete.
+ *
+ * @author Alexey Loubyansky
+ */
+public class ProvisioningEngine {
+
+    private static final int DEFAULT_PARALLELISM = 2;
+
+    private final FeaturePackRepository repo;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private ContentStore store;
+    private boolean staged;
+    private Durability durability = Durability.COMMIT;
+
+    public ProvisioningEngine(FeaturePackRepository repo) {
+        assert repo != null : "repo is null";
+        this.repo = repo;
+    }
+
+    /**
+     * Number of feature packs extracted concurrently.
+     *
+     * @param parallelism  number of concurrent extractions
+     * @return  this engine
+     */
+    public ProvisioningEngine setParallelism(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be greater than 0: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Number of threads extracting the files. The threads are shared
+     * by the feature packs being extracted concurrently.
+     *
+     * @param threads  number of extracting threads
+     * @return  this engine
+     */
+    public ProvisioningEngine setThreads(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be greater than 0: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Content store to materialize the installations from instead of extracting
+     * the feature packs into them.
+     *
+     * @param store  content store or null to extract the feature packs
+     * @return  this engine
+     */
+    public ProvisioningEngine setContentStore(ContentStore store) {
+        this.store = store;
+        return this;
+    }
+
+    /**
+     * Whether the installation should be provisioned in a staging directory
+     * next to it and switched into place once complete. An interrupted staging
+     * run is resumed by the next one.
+     *
+     * @param staged  whether to stage the installation
+     * @return  this engine
+     */
+    public ProvisioningEngine setStaged(boolean staged) {
+        this.staged = staged;
+        return this;
+    }
+
+    /**
+     * What is forced to the storage device when staging, {@link Durability#COMMIT} by default.
+     *
+     * @param durability  durability policy
+     * @return  this engine
+     */
+    public ProvisioningEngine setDurability(Durability durability) {
+        assert durability != null : "durability is null";
+        this.durability = durability;
+        return this;
+    }
+
+    public void provision(File provisioningXml, File installDir) throws ProvisioningException {
+        final ProvisioningMetaData metadata;
+        InputStream is = null;
+        try {
+            is = new FileInputStream(provisioningXml);
+            metadata = new ProvisioningXmlParser().parse(is);
+        } catch (FileNotFoundException e) {
+            throw new ProvisioningException("File not found " + provisioningXml.getAbsolutePath(), e);
+        } catch (XMLStreamException e) {
+            throw new ProvisioningException("Failed to parse " + provisioningXml.getAbsolutePath(), e);
+        } finally {
+            IoUtils.safeClose(is);
+        }
+        provision(metadata, installDir);
+    }
+
+    /**
+     * Resolves the feature packs and extracts them into the installation directory.
+     *
+     * @param metadata  feature packs to provision
+     * @param installDir  installation directory
+     * @throws ProvisioningException  in case of a failure
+     */
+    public void provision(ProvisioningMetaData metadata, final File installDir) throws ProvisioningException {
+        final Collection<GAV> featurePacks = metadata.getFeaturePacks();
+        if(featurePacks.isEmpty()) {
+            return;
+        }
+        final StagingArea staging;
+        if(staged) {
+            try {
+                staging = StagingArea.open(installDir, durability);
+            } catch (IOException e) {
+                throw new ProvisioningException("Failed to open the staging directory of " + installDir.getAbsolutePath(), e);
+            }
+        } else {
+            staging = null;
+            if(!installDir.exists() && !installDir.mkdirs()) {
+                throw new ProvisioningException("Failed to create " + installDir.getAbsolutePath());
+            }
+        }
+        try {
+            provision(metadata, installDir, staging);
+        } finally {
+            if(staging != null) {
+                staging.close();
+            }
+        }
+    }
+
+    private void provision(final ProvisioningMetaData metadata, final File installDir, final StagingArea staging) throws ProvisioningException {
+        final Collection<GAV> featurePacks = metadata.getFeaturePacks();
+        final InstallationState previous;
+        try {
+            previous = InstallationState.read(installDir);
+        } catch (IOException e) {
+            throw new ProvisioningException("Failed to read the state of " + installDir.getAbsolutePath(), e);
+        }
+        final InstallationState installed = new InstallationState(new ConcurrentHashMap<String, InstallationState.Record>());
+        final File targetDir = staging == null ? installDir : staging.getDir();
+
+        final ExecutorService resolver = Executors.newFixedThreadPool(featurePacks.size());
+        final ExecutorService extractor = Executors.newFixedThreadPool(Math.min(parallelism, featurePacks.size()));
+        final ExecutorService unzipper = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        final ZipExtractor zipExtractor = new ZipExtractor().setThreads(threads).setExecutor(unzipper)
+                .setOverwrite(staging != null || !previous.isEmpty()).setListener(staging);
+        try {
+            final List<CompletableFuture<Void>> pipelines = new ArrayList<CompletableFuture<Void>>(featurePacks.size());
+            for(final GAV gav : featurePacks) {
+                pipelines.add(CompletableFuture.supplyAsync(new Supplier<File>() {
+                    @Override
+                    public File get() {
+                        try {
+                            return repo.resolve(gav);
+                        } catch (ProvisioningException e) {
+                            throw new CompletionException(e);
+                        }
+                    }
+                }, resolver).thenAcceptAsync(new Consumer<File>() {
+                    @Override
+                    public void accept(File zip) {
+                        try (ZipReader zipReader = new ZipReader(zip, false)) {
+                            final List<ZipReader.Entry> entries = getChangedEntries(gav, getEntries(gav, zipReader, metadata),
+                                    previous, installed, installDir, staging);
+                            if(store == null) {
+                                zipExtractor.extract(zipReader, entries, targetDir);
+                            } else {
+                                store.install(gav, zipReader, entries, targetDir, zipExtractor, staging == null ? previous : null);
+                            }
+                        } catch (ProvisioningException e) {
+                            throw new CompletionException(e);
+                        } catch (IOException e) {
+                            throw new CompletionException(new ProvisioningException("Failed to unzip " + zip.getAbsolutePath()
+                                    + " to " + targetDir.getAbsolutePath(), e));
+                        }
+                    }
+                }, extractor));
+            }
+            // the other feature packs are let complete, so that the progress of staging is not lost
+            ProvisioningException failure = null;
+            for(CompletableFuture<Void> pipeline : pipelines) {
+                try {
+                    pipeline.join();
+                } catch (CompletionException e) {
+                    if(failure != null) {
+                        failure.addSuppressed(e.getCause());
+                    } else if(e.getCause() instanceof ProvisioningException) {
+                        failure = (ProvisioningException) e.getCause();
+                    } else {
+                        failure = new ProvisioningException("Failed to provision " + featurePacks, e.getCause());
+                    }
+                }
+            }
+            if(failure != null) {
+                throw failure;
+            }
+            try {
+                if(staging == null) {
+                    previous.deleteRemoved(installDir, installed);
+                    installed.recordLastModified(installDir);
+                    installed.write(installDir);
+                } else {
+                    installed.recordLastModified(targetDir);
+                    staging.commit(previous, installed, threads);
+                }
+            } catch (IOException e) {
+                throw new ProvisioningException("Failed to update the state of " + installDir.getAbsolutePath(), e);
+            }
+        } finally {
+            resolver.shutdownNow();
+            extractor.shutdownNow();
+            if(unzipper != null) {
+                unzipper.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Records the files of the entries in the new state of the installation
+     * and returns the entries that have to be extracted, i.e. the directories
+     * and the files that are not up-to-date according to the previous state.
+     * When staging, the up-to-date files are carried over from the installation
+     * and the files extracted by an interrupted staging run are not extracted again.
+     */
+    private static List<ZipReader.Entry> getChangedEntries(GAV gav, Map<ZipReader.Entry, String> entries, InstallationState previous,
+            InstallationState installed, File installDir, StagingArea staging) throws ProvisioningException, IOException {
+        final String featurePack = gav.toString();
+        final List<ZipReader.Entry> changed = new ArrayList<ZipReader.Entry>();
+        for(Map.Entry<ZipReader.Entry, String> packageEntry : entries.entrySet()) {
+            final ZipReader.Entry entry = packageEntry.getKey();
+            if(entry.isDirectory()) {
+                changed.add(entry);
+                continue;
+            }
+            if(entry.getName().startsWith(InstallationState.STATE_DIR + '/')) {
+                throw new ProvisioningException("Entry " + entry.getName() + " conflicts with the installation state");
+            }
+            if(installed.putIfAbsent(entry.getName(), new InstallationState.Record(entry.getSize(), entry.getCrc(), -1,
+                    featurePack, packageEntry.getValue())) != null) {
+                throw new ProvisioningException(entry.getName() + " is provided by more than one feature pack");
+            }
+            if(!previous.isUpToDate(installDir, entry.getName(), entry.getSize(), entry.getCrc())) {
+                if(staging == null || !staging.isExtracted(entry)) {
+                    changed.add(entry);
+                }
+            } else if(staging != null) {
+                staging.carryOver(entry.getName());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the entries of the packages selected for the feature pack and their
+     * dependencies, except for the excluded ones, or all the content if there is no selection,
+     * mapped to the names of the packages they belong to. The entries of a selection are
+     * located with the index of the archive. Without the index the package names are null.
+     */
+    private static Map<ZipReader.Entry, String> getEntries(GAV gav, ZipReader zip, ProvisioningMetaData metadata) throws ProvisioningException, IOException {
+        final Set<String> selected = metadata.getPackages(gav);
+        final Set<String> excluded = metadata.getExcludedPackages(gav);
+        final FeaturePackIndex index = FeaturePackIndex.read(gav, zip);
+        if(index == null) {
+            if(!selected.isEmpty() || !excluded.isEmpty()) {
+                throw new ProvisioningException("Feature pack " + gav + " does not have a package index");
+            }
+            final Map<ZipReader.Entry, String> entries = new LinkedHashMap<ZipReader.Entry, String>();
+            for(ZipReader.Entry entry : zip.getEntries()) {
+                entries.put(entry, null);
+            }
+            return entries;
+        }
+        final FeaturePackDef fpDef = index.getFeaturePackDef();
+        if(selected.isEmpty() && excluded.isEmpty()) {
+            return getAllEntries(gav, zip, fpDef);
+        }
+        for(String name : selected) {
+            if(fpDef.getGroupDef(name) == null) {
+                throw new ProvisioningException("Package " + name + " not found in feature pack " + gav);
+            }
+        }
+        final Map<ZipReader.Entry, String> entries = new LinkedHashMap<ZipReader.Entry, String>();
+        final Set<String> visited = new HashSet<String>(excluded);
+        final Deque<String> queue = new ArrayDeque<String>(selected.isEmpty() ? fpDef.getGroupNames() : selected);
+        while(!queue.isEmpty()) {
+            final String name = queue.removeFirst();
+            if(!visited.add(name)) {
+                continue;
+            }
+            final GroupDef groupDef = fpDef.getGroupDef(name);
+            if(groupDef == null) {
+                // provided by another feature pack
+                continue;
+            }
+            if(groupDef.hasContent()) {
+                for(String path : groupDef.getContentPaths()) {
+                    final long offset = index.getOffset(path);
+                    if(offset <= 0) {
+                        throw new ProvisioningException("Entry " + path + " of feature pack " + gav + " is missing from the index");
+                    }
+                    entries.put(zip.readLocalEntry(offset), name);
+                }
+            }
+            queue.addAll(groupDef.getDependencies());
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the content of all the packages located with the central directory,
+     * which lists the entries in one read instead of reading their local headers
+     * at the indexed offsets.
+     */
+    private static Map<ZipReader.Entry, String> getAllEntries(GAV gav, ZipReader zip, FeaturePackDef fpDef) throws ProvisioningException, IOException {
+        final Map<String, String> packages = new HashMap<String, String>();
+        for(String name : fpDef.getGroupNames()) {
+            final GroupDef groupDef = fpDef.getGroupDef(name);
+            if(groupDef.hasContent()) {
+                for(String path : groupDef.getContentPaths()) {
+                    packages.put(path, name);
+                }
+            }
+        }
+        final Map<ZipReader.Entry, String> entries = new LinkedHashMap<ZipReader.Entry, String>();
+        for(ZipReader.Entry entry : zip.getEntries()) {
+            final String path = entry.getName();
+            final String name = packages.remove(path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+            if(name != null) {
+                entries.put(entry, name);
+            }
+        }
+        if(!packages.isEmpty()) {
+            throw new ProvisioningException("Entry " + packages.keySet().iterator().next() + " of feature pack " + gav + " is missing from the archive");
+        }
+        return entries;
+    }
+
+    /**
+     * Installs the feature packs built in the work directory,
+     * i.e. found under workDir/featurepacks/groupId/artifactId/version,
+     * into the repository.
+     *
+     * @param workDir  feature pack build work directory
+     * @return  GAVs of the installed feature packs
+     * @throws ProvisioningException  in case of a failure
+     */
+    public List<GAV> install(File workDir) throws ProvisioningException {
+        final File fpDir = new File(workDir, Constants.FEATURE_PACKS);
+        if(!fpDir.exists()) {
+            throw new ProvisioningException("Feature packs directory does not exist: " + fpDir.getAbsolutePath());
+        }
+        final List<GAV> installed = new ArrayList<GAV>();
+        for(File groupDir : fpDir.listFiles()) {
+            for(File artifactDir : groupDir.listFiles()) {
+                for(File versionFile : artifactDir.listFiles()) {
+                    final GAV gav = new GAV(groupDir.getName(), artifactDir.getName(), versionFile.getName());
+                    repo.install(gav, versionFile);
+                    installed.add(gav);
+                }
+            }
+        }
+        return installed;
+    }
+}
@@ -23,7 +23,9 @@ package org.jboss.pm.provisioning;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.jboss.pm.GAV;
@@ -35,6 +37,8 @@ import org.jboss.pm.GAV;
 public class ProvisioningMetaData {
 
     private Set<GAV> featurePacks = Collections.emptySet();
+    private Map<GAV, Set<String>> packages = Collections.emptyMap();
+    private Map<GAV, Set<String>> excludedPackages = Collections.emptyMap();
 
     public ProvisioningMetaData() {
     }
@@ -55,6 +59,47 @@ public class ProvisioningMetaData {
         return featurePacks;
     }
 
+    /**
+     * Selects a package of the feature pack to be provisioned along with its dependencies.
+     * If no package is selected, all the packages of the feature pack are provisioned.
+     */
+    public void addPackage(GAV gav, String packageName) {
+        packages = add(packages, gav, packageName);
+    }
+
+    /**
+     * Excludes a package of the feature pack from provisioning even if the selected
+     * packages depend on it.
+     */
+    public void addExcludedPackage(GAV gav, String packageName) {
+        excludedPackages = add(excludedPackages, gav, packageName);
+    }
+
+    public Set<String> getPackages(GAV gav) {
+        final Set<String> names = packages.get(gav);
+        return names == null ? Collections.<String>emptySet() : names;
+    }
+
+    public Set<String> getExcludedPackages(GAV gav) {
+        final Set<String> names = excludedPackages.get(gav);
+        return names == null ? Collections.<String>emptySet() : names;
+    }
+
+    private static Map<GAV, Set<String>> add(Map<GAV, Set<String>> map, GAV gav, String packageName) {
+        assert gav != null : "GAV is null";
+        assert packageName != null : "packageName is null";
+        if(map.isEmpty()) {
+            map = new HashMap<GAV, Set<String>>();
+        }
+        Set<String> names = map.get(gav);
+        if(names == null) {
+            names = new HashSet<String>();
+            map.put(gav, names);
+        }
+        names.add(packageName);
+        return map;
+    }
+
     @Override
     public String toString() {
         return featurePacks.toString();
@@ -0,0 +1,379 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.provisioning;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.pm.util.IoUtils;
+import org.jboss.pm.util.ZipExtractor;
+import org.jboss.pm.util.ZipReader;
+
+/**
+ * Sibling directory of an installation into which the installation is provisioned
+ * before it is switched into place by renaming.
+ *
+ * Every extracted file is recorded in a journal, so that a staging run that
+ * was interrupted can be resumed from the files extracted so far. The files
+ * of the current installation that are up-to-date are linked into the staging
+ * directory instead of being extracted again.
+ *
+ * Before the switch the files of the current installation that were not provisioned,
+ * e.g. logs and deployments, are carried over into the staging directory as well.
+ * The switch renames the current installation to a backup sibling, renames the
+ * staging directory to the installation and deletes the backup. If the process
+ * dies between the renames, the next staging run completes the switch or, if
+ * the staged installation was not complete, restores the backup.
+ *
+ * @author Alexey Loubyansky
+ */
+class StagingArea implements ZipExtractor.Listener, Closeable {
+
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final String BACKUP_SUFFIX = ".backup";
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_HEADER = "# pm staging journal 1";
+
+    /**
+     * Completes or rolls back an interrupted switch and opens the staging directory
+     * of the installation, resuming the previous staging run if there was one.
+     */
+    static StagingArea open(File installDir, Durability durability) throws IOException {
+        final File dir = installDir.getAbsoluteFile();
+        final File stagingDir = new File(dir.getParentFile(), dir.getName() + STAGING_SUFFIX);
+        final File backupDir = new File(dir.getParentFile(), dir.getName() + BACKUP_SUFFIX);
+        final File stagedState = InstallationState.getStateFile(stagingDir);
+        if(backupDir.exists()) {
+            if(!dir.exists()) {
+                if(stagedState.exists()) {
+                    Files.move(stagingDir.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.move(backupDir.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            if(backupDir.exists() && !IoUtils.recursiveDelete(backupDir)) {
+                throw new IOException("Failed to delete " + backupDir.getAbsolutePath());
+            }
+        }
+        // the state is written when staging is complete, it will be written again
+        if(stagedState.exists() && !stagedState.delete()) {
+            throw new IOException("Failed to delete " + stagedState.getAbsolutePath());
+        }
+        final File journalFile = IoUtils.newFile(stagingDir, InstallationState.STATE_DIR, JOURNAL);
+        IoUtils.mkdir(journalFile.getParentFile());
+        final Map<String, InstallationState.Record> extracted = readJournal(journalFile);
+        return new StagingArea(dir, stagingDir, backupDir, journalFile, extracted, durability);
+    }
+
+    private static Map<String, InstallationState.Record> readJournal(File file) throws IOException {
+        final Map<String, InstallationState.Record> records = new HashMap<String, InstallationState.Record>();
+        if(!file.exists()) {
+            return records;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if(!JOURNAL_HEADER.equals(line)) {
+                return records;
+            }
+            while((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ", 3);
+                if(parts.length != 3) {
+                    // the last record may be incomplete
+                    continue;
+                }
+                try {
+                    records.put(parts[2], new InstallationState.Record(Long.parseLong(parts[0]), Long.parseLong(parts[1], 16)));
+                } catch(NumberFormatException e) {
+                    continue;
+                }
+            }
+        }
+        return records;
+    }
+
+    private final File installDir;
+    private final File stagingDir;
+    private final File backupDir;
+    private final File journalFile;
+    private final Map<String, InstallationState.Record> extracted;
+    private final Durability durability;
+    private final FileOutputStream journalOut;
+    private final BufferedWriter journal;
+    private volatile boolean linksSupported = true;
+
+    private StagingArea(File installDir, File stagingDir, File backupDir, File journalFile,
+            Map<String, InstallationState.Record> extracted, Durability durability) throws IOException {
+        this.installDir = installDir;
+        this.stagingDir = stagingDir;
+        this.backupDir = backupDir;
+        this.journalFile = journalFile;
+        this.extracted = extracted;
+        this.durability = durability;
+        final boolean header = extracted.isEmpty();
+        journalOut = new FileOutputStream(journalFile, !header);
+        journal = new BufferedWriter(new OutputStreamWriter(journalOut, StandardCharsets.UTF_8));
+        if(header) {
+            journal.write(JOURNAL_HEADER);
+            journal.newLine();
+            journal.flush();
+        }
+    }
+
+    File getDir() {
+        return stagingDir;
+    }
+
+    /**
+     * Whether the entry was extracted by the previous staging run.
+     */
+    boolean isExtracted(ZipReader.Entry entry) {
+        final InstallationState.Record record = extracted.get(entry.getName());
+        if(record == null || record.size != entry.getSize() || record.crc != entry.getCrc()) {
+            return false;
+        }
+        final File f = new File(stagingDir, entry.getName());
+        return f.isFile() && f.length() == entry.getSize();
+    }
+
+    /**
+     * Links the file of the current installation into the staging directory
+     * or copies it if it can't be linked.
+     */
+    void carryOver(String path) throws IOException {
+        final Path target = stagingDir.toPath().resolve(path);
+        final Path source = installDir.toPath().resolve(path);
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+        if(linksSupported) {
+            try {
+                Files.createLink(target, source);
+                return;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                linksSupported = false;
+            }
+        }
+        Files.copy(source, target, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    @Override
+    public void extracted(ZipReader.Entry entry, Path path) throws IOException {
+        if(durability == Durability.ENTRY) {
+            force(path);
+        }
+        synchronized(journal) {
+            journal.write(Long.toString(entry.getSize()));
+            journal.write(' ');
+            journal.write(Long.toHexString(entry.getCrc()));
+            journal.write(' ');
+            journal.write(entry.getName());
+            journal.newLine();
+            journal.flush();
+            if(durability == Durability.ENTRY) {
+                journalOut.getChannel().force(false);
+            }
+        }
+    }
+
+    /**
+     * Carries over the files of the current installation that neither state records,
+     * writes the state into the staging directory, forces the content according
+     * to the durability policy and switches the staging directory into place.
+     *
+     * @param previous  state of the current installation
+     * @param state  state of the staged installation
+     * @param threads  number of threads forcing the files
+     */
+    void commit(InstallationState previous, InstallationState state, int threads) throws IOException {
+        journal.close();
+        if(installDir.exists()) {
+            carryOverUnrecorded(previous, state);
+        }
+        state.write(stagingDir);
+        if(durability != Durability.NONE) {
+            forceTree(durability == Durability.COMMIT, threads);
+        }
+        // until here an interrupted run resumes from the journal
+        if(!journalFile.delete()) {
+            throw new IOException("Failed to delete " + journalFile.getAbsolutePath());
+        }
+        if(installDir.exists()) {
+            Files.move(installDir.toPath(), backupDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(stagingDir.toPath(), installDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            if(!IoUtils.recursiveDelete(backupDir)) {
+                throw new IOException("Failed to delete " + backupDir.getAbsolutePath());
+            }
+        } else {
+            Files.move(stagingDir.toPath(), installDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        if(durability != Durability.NONE) {
+            forceDir(installDir.getParentFile().toPath());
+        }
+    }
+
+    /**
+     * Carries over the directories and the files of the current installation that were
+     * not provisioned, e.g. logs, data and deployments, as they are kept when
+     * provisioning in place. The files recorded only in the previous state
+     * are the removed content and are left behind.
+     */
+    private void carryOverUnrecorded(final InstallationState previous, final InstallationState state) throws IOException {
+        final Path root = installDir.toPath();
+        final Path stateDir = root.resolve(InstallationState.STATE_DIR);
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if(dir.equals(stateDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(stagingDir.toPath().resolve(root.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                final String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+                if(state.get(path) == null && previous.get(path) == null) {
+                    carryOver(path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        IoUtils.safeClose(journal);
+    }
+
+    private void forceTree(boolean files, int threads) throws IOException {
+        final List<Path> paths = new ArrayList<Path>();
+        final List<Path> dirs = new ArrayList<Path>();
+        Files.walkFileTree(stagingDir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if(files) {
+                    paths.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if(e != null) {
+                    throw e;
+                }
+                dirs.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if(!files) {
+            paths.add(InstallationState.getStateFile(stagingDir).toPath());
+        }
+
+        final int workers = Math.min(threads, paths.size());
+        if(workers <= 1) {
+            for(Path path : paths) {
+                force(path);
+            }
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(workers);
+            try {
+                final AtomicInteger next = new AtomicInteger();
+                final List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+                for(int i = 0; i < workers; ++i) {
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            int i;
+                            while((i = next.getAndIncrement()) < paths.size()) {
+                                force(paths.get(i));
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                for(Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while forcing " + stagingDir.getAbsolutePath(), e);
+                    } catch (ExecutionException e) {
+                        if(e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
+                        }
+                        throw new IOException("Failed to force " + stagingDir.getAbsolutePath(), e.getCause());
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        for(Path dir : dirs) {
+            forceDir(dir);
+        }
+    }
+
+    private static void force(Path file) throws IOException {
+        // files linked from the content store are read-only, they are forced through a read-only channel
+        try (FileChannel channel = FileChannel.open(file, Files.isWritable(file) ? StandardOpenOption.WRITE : StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static void forceDir(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not every platform allows directories to be forced
+        }
+    }
+}
@@ -46,8 +46,10 @@ class ProvisioningXmlParser10 implements XMLElementReader<ProvisioningMetaData>
 
     enum Element {
 
+        EXCLUDE("exclude"),
         FEATURE_PACK("feature-pack"),
         INSTALLATION("installation"),
+        PACKAGE("package"),
         UNIVERSE("universe"),
 
         // default unknown element
@@ -58,8 +60,10 @@ class ProvisioningXmlParser10 implements XMLElementReader<ProvisioningMetaData>
 
         static {
             final Map<QName, Element> elementsMap = new HashMap<QName, Element>();
+            elementsMap.put(new QName(NAMESPACE_1_0, Element.EXCLUDE.getLocalName()), Element.EXCLUDE);
             elementsMap.put(new QName(NAMESPACE_1_0, Element.FEATURE_PACK.getLocalName()), Element.FEATURE_PACK);
             elementsMap.put(new QName(NAMESPACE_1_0, Element.INSTALLATION.getLocalName()), Element.INSTALLATION);
+            elementsMap.put(new QName(NAMESPACE_1_0, Element.PACKAGE.getLocalName()), Element.PACKAGE);
             elementsMap.put(new QName(NAMESPACE_1_0, Element.UNIVERSE.getLocalName()), Element.UNIVERSE);
             elements = elementsMap;
         }
@@ -205,9 +209,34 @@ class ProvisioningXmlParser10 implements XMLElementReader<ProvisioningMetaData>
         if (name == null) {
             throw ParsingUtils.missingAttributes(reader.getLocation(), Collections.singleton(Attribute.NAME));
         }
-        ParsingUtils.parseNoContent(reader);
+        final GAV gav = new GAV(group, name, version);
+        metadata.addFeaturePack(gav);
 
-        metadata.addFeaturePack(new GAV(group, name, version));
+        while (reader.hasNext()) {
+            switch (reader.nextTag()) {
+                case XMLStreamConstants.END_ELEMENT: {
+                    return;
+                }
+                case XMLStreamConstants.START_ELEMENT: {
+                    final Element element = Element.of(reader.getName());
+                    switch (element) {
+                        case PACKAGE:
+                            metadata.addPackage(gav, parseName(reader, true));
+                            break;
+                        case EXCLUDE:
+                            metadata.addExcludedPackage(gav, parseName(reader, true));
+                            break;
+                        default:
+                            throw ParsingUtils.unexpectedContent(reader);
+                    }
+                    break;
+                }
+                default: {
+                    throw ParsingUtils.unexpectedContent(reader);
+                }
+            }
+        }
+        throw ParsingUtils.endOfDocument(reader.getLocation());
     }
 
     private String parseName(final XMLExtendedStreamReader reader, boolean exclusive) throws XMLStreamException {
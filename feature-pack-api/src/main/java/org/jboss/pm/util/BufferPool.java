@@ -0,0 +1,203 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of equally sized buffers shared by the threads copying,
+ * hashing and inflating content, so that every file does not allocate
+ * its own buffer.
+ *
+ * A buffer is taken from the pool when available, otherwise a new one is
+ * allocated. Released buffers are kept as long as the pool holds less than
+ * its maximum, the rest are left to the garbage collector. The hits, misses
+ * and discarded buffers are counted to help size the pool.
+ *
+ * @author Alexey Loubyansky
+ */
+public class BufferPool {
+
+    /**
+     * Counters of a pool at some point in time.
+     */
+    public static class Stats {
+
+        private final String name;
+        private final long hits;
+        private final long misses;
+        private final long discarded;
+        private final int pooled;
+
+        Stats(String name, long hits, long misses, long discarded, int pooled) {
+            this.name = name;
+            this.hits = hits;
+            this.misses = misses;
+            this.discarded = discarded;
+            this.pooled = pooled;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Number of buffers taken from the pool.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Number of buffers allocated because the pool was empty.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Number of released buffers dropped because the pool was full.
+         */
+        public long getDiscarded() {
+            return discarded;
+        }
+
+        /**
+         * Number of buffers in the pool.
+         */
+        public int getPooled() {
+            return pooled;
+        }
+
+        /**
+         * Counters accumulated since the earlier statistics of the same pool.
+         * The number of pooled buffers is the current one.
+         *
+         * @param earlier  statistics taken earlier
+         * @return  difference of the counters
+         */
+        public Stats since(Stats earlier) {
+            return new Stats(name, hits - earlier.hits, misses - earlier.misses, discarded - earlier.discarded, pooled);
+        }
+
+        @Override
+        public String toString() {
+            return name + " buffers: " + hits + " hits, " + misses + " misses, " + discarded + " discarded, " + pooled + " pooled";
+        }
+    }
+
+    private final String name;
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final BlockingQueue<ByteBuffer> pooled;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Creates a pool.
+     *
+     * @param name  name of the pool for the statistics
+     * @param bufferSize  capacity of the buffers
+     * @param maxPooled  max number of buffers kept in the pool
+     * @param direct  whether the buffers are allocated outside of the heap
+     */
+    public BufferPool(String name, int bufferSize, int maxPooled, boolean direct) {
+        assert name != null : "name is null";
+        if(bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        if(maxPooled <= 0) {
+            throw new IllegalArgumentException("Max number of pooled buffers must be positive: " + maxPooled);
+        }
+        this.name = name;
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+        this.pooled = new ArrayBlockingQueue<ByteBuffer>(maxPooled);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxPooled() {
+        return maxPooled;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool or allocates a new one
+     * if the pool is empty. Heap buffers are backed by an accessible array.
+     *
+     * @return  buffer
+     */
+    public ByteBuffer take() {
+        final ByteBuffer buf = pooled.poll();
+        if(buf != null) {
+            hits.incrementAndGet();
+            buf.clear();
+            return buf;
+        }
+        misses.incrementAndGet();
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Returns a buffer taken from this pool. The buffer must not be used
+     * by the caller afterwards.
+     *
+     * @param buf  buffer, null is ignored
+     */
+    public void release(ByteBuffer buf) {
+        if(buf == null) {
+            return;
+        }
+        if(buf.capacity() != bufferSize || buf.isDirect() != direct) {
+            throw new IllegalArgumentException("The buffer was not taken from pool " + name);
+        }
+        if(!pooled.offer(buf)) {
+            discarded.incrementAndGet();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(name, hits.get(), misses.get(), discarded.get(), pooled.size());
+    }
+
+    @Override
+    public String toString() {
+        return getStats().toString();
+    }
+}
@@ -29,10 +29,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
 import java.util.zip.ZipFile;
 
+import org.jboss.pm.Constants;
+
 /**
  *
  * @author Alexey Loubyansky
@@ -43,6 +52,55 @@ public class IoUtils {
 
     private static final int DEFAULT_BUFFER_SIZE = 65536;
 
+    private static final BufferPool STREAM_BUFFERS;
+    private static final BufferPool CHANNEL_BUFFERS;
+    static {
+        // a bad value must not fail the initialization of the class, which would make it unusable in the JVM
+        final int defaultPooled = 2 * Runtime.getRuntime().availableProcessors();
+        int pooled = defaultPooled;
+        final String value = System.getProperty(Constants.PM_IO_BUFFERS);
+        if(value != null) {
+            try {
+                pooled = Integer.parseInt(value.trim());
+            } catch(NumberFormatException e) {
+                pooled = defaultPooled;
+            }
+            if(pooled <= 0) {
+                pooled = defaultPooled;
+            }
+        }
+        final boolean direct = Boolean.parseBoolean(System.getProperty(Constants.PM_IO_DIRECT_BUFFERS, "true"));
+        STREAM_BUFFERS = new BufferPool("stream", DEFAULT_BUFFER_SIZE, pooled, false);
+        CHANNEL_BUFFERS = new BufferPool("channel", DEFAULT_BUFFER_SIZE, pooled, direct);
+    }
+
+    /**
+     * Heap buffers of the loops copying and inflating streams.
+     * The max number of pooled buffers is set with {@link Constants#PM_IO_BUFFERS}
+     * and defaults to twice the number of processors, which is also used
+     * when the value is not a positive number. The number in effect is
+     * {@link BufferPool#getMaxPooled()}.
+     */
+    public static BufferPool getStreamBufferPool() {
+        return STREAM_BUFFERS;
+    }
+
+    /**
+     * Buffers of the loops reading file channels, e.g. to compute checksums.
+     * Unless {@link Constants#PM_IO_DIRECT_BUFFERS} is false these are direct buffers,
+     * which the channels fill without an intermediate copy and which don't take heap space.
+     */
+    public static BufferPool getChannelBufferPool() {
+        return CHANNEL_BUFFERS;
+    }
+
+    /**
+     * Statistics of the shared buffer pools.
+     */
+    public static List<BufferPool.Stats> getBufferPoolStats() {
+        return Arrays.asList(STREAM_BUFFERS.getStats(), CHANNEL_BUFFERS.getStats());
+    }
+
     /**
      * Copy input stream to output stream and close them both
      *
@@ -53,7 +111,7 @@ public class IoUtils {
      */
     public static void copyStreamAndClose(InputStream is, OutputStream os) throws IOException {
         try {
-            copyStream(is, os, DEFAULT_BUFFER_SIZE);
+            copyStream(is, os);
             // throw an exception if the close fails since some data might be lost
             is.close();
             os.close();
@@ -67,6 +125,9 @@ public class IoUtils {
 
     /**
      * Copy input stream to output stream without closing streams. Flushes output stream when done.
+     * Between plain file streams the content of a regular file is transferred by their channels,
+     * otherwise, or if there is more to read, e.g. from a pipe or a device whose size is unknown,
+     * it is copied through a buffer of the {@link #getStreamBufferPool() stream pool}.
      *
      * @param is input stream
      * @param os output stream
@@ -74,26 +135,126 @@ public class IoUtils {
      * @throws IOException for any error
      */
     public static void copyStream(InputStream is, OutputStream os) throws IOException {
-        copyStream(is, os, DEFAULT_BUFFER_SIZE);
+        assert is != null : "input stream is null";
+        assert os != null : "output stream is null";
+        if(is.getClass() == FileInputStream.class && os.getClass() == FileOutputStream.class) {
+            final FileChannel source = ((FileInputStream) is).getChannel();
+            // pipes and devices report no size and may not support positioning
+            if(source.size() > 0) {
+                transfer(source, ((FileOutputStream) os).getChannel());
+            }
+        }
+        final ByteBuffer buf = STREAM_BUFFERS.take();
+        try {
+            final byte[] buff = buf.array();
+            int rc;
+            while ((rc = is.read(buff)) != -1) os.write(buff, 0, rc);
+        } finally {
+            STREAM_BUFFERS.release(buf);
+        }
+        os.flush();
     }
 
     /**
-     * Copy input stream to output stream without closing streams. Flushes output stream when done.
+     * Copies at most the given number of bytes from the input stream to the output stream
+     * without closing or flushing them.
      *
      * @param is input stream
      * @param os output stream
-     * @param bufferSize the buffer size to use
+     * @param length  maximum number of bytes to copy
+     * @return  number of bytes copied, less than the length if the input stream ended earlier
      *
      * @throws IOException for any error
      */
-    private static void copyStream(InputStream is, OutputStream os, int bufferSize)
-            throws IOException {
+    public static long copyStream(InputStream is, OutputStream os, long length) throws IOException {
         assert is != null : "input stream is null";
         assert os != null : "output stream is null";
-        byte[] buff = new byte[bufferSize];
-        int rc;
-        while ((rc = is.read(buff)) != -1) os.write(buff, 0, rc);
-        os.flush();
+        final ByteBuffer buf = STREAM_BUFFERS.take();
+        long remaining = length;
+        try {
+            final byte[] buff = buf.array();
+            while(remaining > 0) {
+                final int rc = is.read(buff, 0, (int) Math.min(buff.length, remaining));
+                if(rc < 0) {
+                    break;
+                }
+                os.write(buff, 0, rc);
+                remaining -= rc;
+            }
+        } finally {
+            STREAM_BUFFERS.release(buf);
+        }
+        return length - remaining;
+    }
+
+    /**
+     * Transfers the rest of the source channel, i.e. from its current position,
+     * to the target channel at its current position. Depending on the platform
+     * the content does not pass through the user space. The source is expected to be
+     * a regular file, the transfer stops at its size.
+     *
+     * @param source  source channel
+     * @param target  target channel
+     * @return  number of bytes transferred
+     * @throws IOException for any error
+     */
+    public static long transfer(FileChannel source, FileChannel target) throws IOException {
+        assert source != null : "source is null";
+        assert target != null : "target is null";
+        final long start = source.position();
+        final long size = source.size();
+        long position = start;
+        while(position < size) {
+            final long transferred = source.transferTo(position, size - position, target);
+            if(transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+        source.position(position);
+        return position - start;
+    }
+
+    /**
+     * Updates the digest with the content of the file.
+     *
+     * @param file  file
+     * @param digest  digest to update
+     * @throws IOException for any error
+     */
+    public static void digest(File file, MessageDigest digest) throws IOException {
+        final ByteBuffer buf = CHANNEL_BUFFERS.take();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while(channel.read(buf) != -1) {
+                buf.flip();
+                digest.update(buf);
+                buf.clear();
+            }
+        } finally {
+            CHANNEL_BUFFERS.release(buf);
+        }
+    }
+
+    /**
+     * Computes the CRC-32 of the content of the file.
+     *
+     * @param file  file
+     * @return  CRC-32
+     * @throws IOException for any error
+     */
+    public static long crc32(File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer buf = CHANNEL_BUFFERS.take();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while(channel.read(buf) != -1) {
+                buf.flip();
+                crc.update(buf);
+                buf.clear();
+            }
+        } finally {
+            CHANNEL_BUFFERS.release(buf);
+        }
+        return crc.getValue();
     }
 
     public static void copyFile(File sourceFile, File targetFile) throws IOException {
@@ -132,16 +293,21 @@ public class IoUtils {
     }
 
     public static void copy(final InputStream is, final File target) throws IOException {
-        if(! target.getParentFile().exists()) {
-            target.getParentFile().mkdirs(); // Hmm
+        final File parent = target.getAbsoluteFile().getParentFile();
+        if(! parent.exists()) {
+            parent.mkdirs(); // Hmm
+        }
+        try (final FileOutputStream os = new FileOutputStream(target)) {
+            copyStream(is, os);
         }
-        copyStream(is, new FileOutputStream(target));
     }
 
     public static void copy(File source, File target) throws IOException {
-        try (final FileInputStream is = new FileInputStream(source)){
-            copy(is, target);
+        final File parent = target.getAbsoluteFile().getParentFile();
+        if(! parent.exists()) {
+            parent.mkdirs();
         }
+        Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
 
     public static void safeClose(final Closeable closeable) {
@@ -0,0 +1,254 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Extracts the content of a ZIP archive using several threads.
+ *
+ * The directories are created upfront on the calling thread, each one once.
+ * The files are then extracted by the workers which take the next entry
+ * from the list sorted by size, the largest first, so that a big entry
+ * picked up at the end does not leave the other workers idle.
+ *
+ * @author Alexey Loubyansky
+ */
+public class ZipExtractor {
+
+    /**
+     * Notified on the extracting threads about every extracted file.
+     */
+    public interface Listener {
+        void extracted(ZipReader.Entry entry, Path path) throws IOException;
+    }
+
+    private static final Comparator<ZipReader.Entry> LARGEST_FIRST = new Comparator<ZipReader.Entry>() {
+        @Override
+        public int compare(ZipReader.Entry o1, ZipReader.Entry o2) {
+            return Long.compare(o2.getSize(), o1.getSize());
+        }
+    };
+
+    private ExecutorService executor;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean overwrite;
+    private Listener listener;
+
+    /**
+     * Number of threads extracting the files. Values greater than 1
+     * make the extractor create its own thread pool for the duration
+     * of each extraction unless an executor has been set, in which case
+     * it is the number of extracting tasks submitted to the executor.
+     *
+     * @param threads  number of extracting threads
+     * @return  this extractor
+     */
+    public ZipExtractor setThreads(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be greater than 0: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Executor to extract the files on. The executor is not shut down by the extractor.
+     * It should not be the executor the extraction itself is called from since
+     * the calling thread blocks until all the files have been extracted.
+     *
+     * @param executor  executor to submit the extraction to
+     * @return  this extractor
+     */
+    public ZipExtractor setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Whether existing files should be replaced. By default the extraction
+     * fails if a file already exists. Existing files are deleted before
+     * the new ones are created rather than written to, so that files sharing
+     * their content with other files, e.g. hard links, are not affected.
+     *
+     * @param overwrite  whether to overwrite existing files
+     * @return  this extractor
+     */
+    public ZipExtractor setOverwrite(boolean overwrite) {
+        this.overwrite = overwrite;
+        return this;
+    }
+
+    /**
+     * Listener notified about every extracted file once it has been closed.
+     *
+     * @param listener  listener or null
+     * @return  this extractor
+     */
+    public ZipExtractor setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public void extract(File zip, File targetDir) throws IOException {
+        try (ZipReader zipReader = new ZipReader(zip)) {
+            extract(zipReader, zipReader.getEntries(), targetDir);
+        }
+    }
+
+    /**
+     * Extracts the entries of the archive into the target directory.
+     * Unless the extractor is set to overwrite, files that already exist
+     * are not overwritten, the extraction fails instead.
+     *
+     * @param zip  archive to extract
+     * @param entries  entries of the archive to extract
+     * @param targetDir  target directory
+     * @throws IOException  in case of a failure
+     */
+    public void extract(final ZipReader zip, Collection<ZipReader.Entry> entries, File targetDir) throws IOException {
+        final Path target = targetDir.toPath().toAbsolutePath().normalize();
+        final List<ZipReader.Entry> files = new ArrayList<ZipReader.Entry>(entries.size());
+        final Set<Path> dirs = new HashSet<Path>();
+        for(ZipReader.Entry entry : entries) {
+            final Path path = resolve(target, entry);
+            if(entry.isDirectory()) {
+                dirs.add(path);
+            } else {
+                dirs.add(path.getParent());
+                files.add(entry);
+            }
+        }
+        for(Path dir : dirs) {
+            Files.createDirectories(dir);
+        }
+        if(files.isEmpty()) {
+            return;
+        }
+        Collections.sort(files, LARGEST_FIRST);
+
+        final int workers = Math.min(files.size(), threads);
+        if(workers == 1) {
+            extractFiles(zip, target, files, overwrite, listener, new AtomicInteger());
+            return;
+        }
+
+        final ExecutorService executor = this.executor == null ? Executors.newFixedThreadPool(workers) : this.executor;
+        final AtomicInteger next = new AtomicInteger();
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+        try {
+            for(int i = 0; i < workers; ++i) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        extractFiles(zip, target, files, overwrite, listener, next);
+                        return null;
+                    }
+                }));
+            }
+            IOException failure = null;
+            for(Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while extracting " + zip.getFile().getName(), e);
+                } catch (ExecutionException e) {
+                    if(failure == null) {
+                        failure = e.getCause() instanceof IOException ?
+                                (IOException) e.getCause() : new IOException("Failed to extract " + zip.getFile().getName(), e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if(failure != null) {
+                throw failure;
+            }
+        } finally {
+            if(this.executor == null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void extractFiles(ZipReader zip, Path target, List<ZipReader.Entry> files, boolean overwrite,
+            Listener listener, AtomicInteger next) throws IOException {
+        int i;
+        while((i = next.getAndIncrement()) < files.size()) {
+            final ZipReader.Entry entry = files.get(i);
+            final Path path = target.resolve(entry.getName());
+            try {
+                if(overwrite) {
+                    Files.deleteIfExists(path);
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    if(entry.getMethod() == ZipEntry.STORED) {
+                        zip.transferRaw(entry, channel);
+                    } else {
+                        try (InputStream is = zip.open(entry)) {
+                            IoUtils.copyStream(is, Channels.newOutputStream(channel));
+                        }
+                    }
+                }
+                if(listener != null) {
+                    listener.extracted(entry, path);
+                }
+            } catch (IOException | RuntimeException e) {
+                // makes the other workers stop
+                next.set(files.size());
+                throw e;
+            }
+        }
+    }
+
+    private static Path resolve(Path target, ZipReader.Entry entry) throws ZipException {
+        final Path path = target.resolve(entry.getName()).normalize();
+        if(!path.startsWith(target)) {
+            throw new ZipException("Entry " + entry.getName() + " is outside of the target directory");
+        }
+        return path;
+    }
+}
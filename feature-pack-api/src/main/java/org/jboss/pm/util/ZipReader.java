@@ -0,0 +1,519 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a ZIP archive and gives access to the
+ * raw (still compressed) content of its entries, so that they can be copied
+ * to another archive by {@link ZipWriter} without being inflated and deflated again.
+ *
+ * Reads are positional, so the content of different entries can be read
+ * concurrently.
+ *
+ * Entries at known offsets, e.g. recorded in an index, can be read without
+ * reading the central directory.
+ *
+ * @author Alexey Loubyansky
+ */
+public class ZipReader implements Closeable {
+
+    private static final int ENDHDR = 22;
+    private static final int ZIP64_LOCHDR = 20;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+
+    /**
+     * An entry as described by the central directory or, if it was read
+     * with {@link ZipReader#readLocalEntry(long)}, by its local header.
+     */
+    public static class Entry {
+
+        private final String name;
+        private final int method;
+        private final long dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long offset;
+        private final long dataOffset;
+
+        Entry(String name, int method, long dosTime, long crc, long compressedSize, long size, long offset) {
+            this(name, method, dosTime, crc, compressedSize, size, offset, -1);
+        }
+
+        Entry(String name, int method, long dosTime, long crc, long compressedSize, long size, long offset, long dataOffset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+            this.dataOffset = dataOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getTime() {
+            return dosToJavaTime(dosTime);
+        }
+
+        /**
+         * Offset of the entry's local header in the archive.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Creates a new ZipEntry with the attributes of this entry
+         * which can be used to copy the raw content with {@link ZipWriter}.
+         *
+         * @param name  name of the new entry
+         * @return  new entry
+         */
+        public ZipEntry toZipEntry(String name) {
+            final ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(method);
+            entry.setCrc(crc);
+            entry.setSize(size);
+            entry.setCompressedSize(compressedSize);
+            entry.setTime(getTime());
+            return entry;
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private volatile List<Entry> entries;
+    private volatile Map<String, Entry> entriesByName;
+
+    public ZipReader(File file) throws IOException {
+        this(file, true);
+    }
+
+    /**
+     * @param file  archive to read
+     * @param centralDirectory  whether the central directory should be read
+     *        upfront or on the first access to the entries. An archive whose entries
+     *        are located with {@link #readLocalEntry(long)} never reads it.
+     * @throws IOException  in case of a failure
+     */
+    public ZipReader(File file, boolean centralDirectory) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        if(centralDirectory) {
+            try {
+                entries = readCentralDirectory();
+            } catch(IOException | RuntimeException e) {
+                IoUtils.safeClose(channel);
+                throw e;
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Entries in the order of the central directory.
+     */
+    public List<Entry> getEntries() throws IOException {
+        List<Entry> list = entries;
+        if(list == null) {
+            synchronized(this) {
+                list = entries;
+                if(list == null) {
+                    list = readCentralDirectory();
+                    entries = list;
+                }
+            }
+        }
+        return list;
+    }
+
+    public Entry getEntry(String name) throws IOException {
+        Map<String, Entry> map = entriesByName;
+        if(map == null) {
+            final List<Entry> list = getEntries();
+            map = new HashMap<String, Entry>(list.size() * 4 / 3 + 1);
+            for(Entry entry : list) {
+                map.put(entry.getName(), entry);
+            }
+            entriesByName = map;
+        }
+        return map.get(name);
+    }
+
+    /**
+     * Opens a stream of the compressed content of the entry.
+     *
+     * @param entry  entry of this archive
+     * @return  stream of exactly {@link Entry#getCompressedSize()} bytes
+     * @throws IOException  in case of a failure
+     */
+    public InputStream openRaw(Entry entry) throws IOException {
+        return new ChannelInputStream(getDataOffset(entry), entry.getCompressedSize());
+    }
+
+    /**
+     * Transfers the compressed content of the entry to the channel, which
+     * for stored entries is their content, without copying it through the heap.
+     *
+     * @param entry  entry of this archive
+     * @param target  target channel
+     * @return  number of bytes transferred, i.e. {@link Entry#getCompressedSize()}
+     * @throws IOException  in case of a failure
+     */
+    public long transferRaw(Entry entry, WritableByteChannel target) throws IOException {
+        final long start = getDataOffset(entry);
+        final long end = start + entry.getCompressedSize();
+        long position = start;
+        while(position < end) {
+            final long transferred = channel.transferTo(position, end - position, target);
+            if(transferred <= 0) {
+                throw new EOFException("Unexpected end of " + entry.getName() + " in " + file.getAbsolutePath());
+            }
+            position += transferred;
+        }
+        return end - start;
+    }
+
+    /**
+     * Opens a stream of the uncompressed content of the entry.
+     *
+     * @param entry  entry of this archive
+     * @return  stream of the entry's content
+     * @throws IOException  in case of a failure
+     */
+    public InputStream open(Entry entry) throws IOException {
+        switch(entry.getMethod()) {
+            case ZipEntry.STORED:
+                return openRaw(entry);
+            case ZipEntry.DEFLATED:
+                return new EntryInflaterInputStream(openRaw(entry), entry);
+            default:
+                throw new ZipException("Unsupported compression method " + entry.getMethod() + " of " + entry.getName());
+        }
+    }
+
+    /**
+     * Reads the entry whose local header is at the offset, which allows
+     * entries at known offsets to be read without the central directory.
+     * The local header has to contain the CRC and sizes of the entry,
+     * which is always the case for archives written by {@link ZipWriter}.
+     *
+     * @param offset  offset of the entry's local header
+     * @return  entry
+     * @throws IOException  in case of a failure
+     */
+    public Entry readLocalEntry(long offset) throws IOException {
+        final ByteBuffer buf = read(offset, ZipWriter.LOCHDR);
+        if(buf.getInt(0) != ZipWriter.LOCSIG) {
+            throw new ZipException("Invalid local header at " + offset + " in " + file.getAbsolutePath());
+        }
+        final int flags = buf.getShort(6) & 0xFFFF;
+        final int method = buf.getShort(8) & 0xFFFF;
+        final long dosTime = buf.getInt(10) & MAX_32;
+        final long crc = buf.getInt(14) & MAX_32;
+        final long compressedSize = buf.getInt(18) & MAX_32;
+        final long size = buf.getInt(22) & MAX_32;
+        final int nameLen = buf.getShort(26) & 0xFFFF;
+        final int extraLen = buf.getShort(28) & 0xFFFF;
+        if((flags & 0x8) != 0 || compressedSize == MAX_32 || size == MAX_32) {
+            throw new ZipException("Sizes of the entry at " + offset + " are not in its local header in " + file.getAbsolutePath());
+        }
+        final byte[] nameBytes = new byte[nameLen];
+        read(offset + ZipWriter.LOCHDR, nameLen).get(nameBytes);
+        final String name = new String(nameBytes, (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+        return new Entry(name, method, dosTime, crc, compressedSize, size, offset, offset + ZipWriter.LOCHDR + nameLen + extraLen);
+    }
+
+    /**
+     * Offset of the first byte of the entry's compressed content.
+     */
+    public long getDataOffset(Entry entry) throws IOException {
+        if(entry.dataOffset >= 0) {
+            return entry.dataOffset;
+        }
+        final ByteBuffer buf = read(entry.getOffset(), ZipWriter.LOCHDR);
+        if(buf.getInt(0) != ZipWriter.LOCSIG) {
+            throw new ZipException("Invalid local header of " + entry.getName() + " in " + file.getAbsolutePath());
+        }
+        return entry.getOffset() + ZipWriter.LOCHDR + (buf.getShort(26) & 0xFFFF) + (buf.getShort(28) & 0xFFFF);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        final long fileSize = channel.size();
+        if(fileSize < ENDHDR) {
+            throw new ZipException("Not a ZIP archive " + file.getAbsolutePath());
+        }
+        final int tailSize = (int) Math.min(fileSize, ENDHDR + MAX_COMMENT);
+        final ByteBuffer tail = read(fileSize - tailSize, tailSize);
+        int endPos = -1;
+        for(int i = tailSize - ENDHDR; i >= 0; --i) {
+            if(tail.getInt(i) == ZipWriter.ENDSIG) {
+                endPos = i;
+                break;
+            }
+        }
+        if(endPos < 0) {
+            throw new ZipException("End of central directory not found in " + file.getAbsolutePath());
+        }
+        long count = tail.getShort(endPos + 10) & 0xFFFF;
+        long cenSize = tail.getInt(endPos + 12) & MAX_32;
+        long cenOffset = tail.getInt(endPos + 16) & MAX_32;
+        final long zip64LocPos = fileSize - tailSize + endPos - ZIP64_LOCHDR;
+        if(zip64LocPos >= 0) {
+            final ByteBuffer loc = read(zip64LocPos, ZIP64_LOCHDR);
+            if(loc.getInt(0) == ZipWriter.ZIP64_LOCSIG) {
+                final ByteBuffer end64 = read(loc.getLong(8), 56);
+                if(end64.getInt(0) != ZipWriter.ZIP64_ENDSIG) {
+                    throw new ZipException("Invalid ZIP64 end of central directory in " + file.getAbsolutePath());
+                }
+                count = end64.getLong(32);
+                cenSize = end64.getLong(40);
+                cenOffset = end64.getLong(48);
+            }
+        }
+        if(cenSize > Integer.MAX_VALUE || cenOffset + cenSize > fileSize) {
+            throw new ZipException("Invalid central directory in " + file.getAbsolutePath());
+        }
+
+        final ByteBuffer cen = read(cenOffset, (int) cenSize);
+        final List<Entry> entries = new ArrayList<Entry>((int) Math.min(count, 1 << 20));
+        int pos = 0;
+        while(pos + ZipWriter.CENHDR <= cenSize) {
+            if(cen.getInt(pos) != ZipWriter.CENSIG) {
+                throw new ZipException("Invalid central directory header in " + file.getAbsolutePath());
+            }
+            final int flags = cen.getShort(pos + 8) & 0xFFFF;
+            final int method = cen.getShort(pos + 10) & 0xFFFF;
+            final long dosTime = cen.getInt(pos + 12) & MAX_32;
+            final long crc = cen.getInt(pos + 16) & MAX_32;
+            long compressedSize = cen.getInt(pos + 20) & MAX_32;
+            long size = cen.getInt(pos + 24) & MAX_32;
+            final int nameLen = cen.getShort(pos + 28) & 0xFFFF;
+            final int extraLen = cen.getShort(pos + 30) & 0xFFFF;
+            final int commentLen = cen.getShort(pos + 32) & 0xFFFF;
+            long offset = cen.getInt(pos + 42) & MAX_32;
+
+            final byte[] nameBytes = new byte[nameLen];
+            cen.position(pos + ZipWriter.CENHDR);
+            cen.get(nameBytes);
+            final String name = new String(nameBytes, (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+
+            // ZIP64 extended information
+            int extraPos = pos + ZipWriter.CENHDR + nameLen;
+            final int extraEnd = extraPos + extraLen;
+            while(extraPos + 4 <= extraEnd) {
+                final int id = cen.getShort(extraPos) & 0xFFFF;
+                final int len = cen.getShort(extraPos + 2) & 0xFFFF;
+                if(id == 0x0001) {
+                    int i = extraPos + 4;
+                    if(size == MAX_32) {
+                        size = cen.getLong(i);
+                        i += 8;
+                    }
+                    if(compressedSize == MAX_32) {
+                        compressedSize = cen.getLong(i);
+                        i += 8;
+                    }
+                    if(offset == MAX_32) {
+                        offset = cen.getLong(i);
+                    }
+                    break;
+                }
+                extraPos += 4 + len;
+            }
+            entries.add(new Entry(name, method, dosTime, crc, compressedSize, size, offset));
+            pos += ZipWriter.CENHDR + nameLen + extraLen + commentLen;
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while(buf.hasRemaining()) {
+            if(channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of " + file.getAbsolutePath());
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    static long dosToJavaTime(long dosTime) {
+        final LocalDateTime ldt = LocalDateTime.of(
+                (int) (((dosTime >> 25) & 0x7f) + 1980),
+                (int) Math.max((dosTime >> 21) & 0x0f, 1),
+                (int) Math.max((dosTime >> 16) & 0x1f, 1),
+                (int) Math.min((dosTime >> 11) & 0x1f, 23),
+                (int) Math.min((dosTime >> 5) & 0x3f, 59),
+                (int) Math.min((dosTime << 1) & 0x3e, 59));
+        return ldt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Inflates the raw content of an entry feeding the inflater with an extra
+     * dummy byte at the end of the input, as required by an inflater without
+     * the ZLIB header, and releases the inflater when closed.
+     * The input buffer is taken from the stream buffer pool of {@link IoUtils}
+     * and returned to it when closed.
+     */
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+
+        private final Entry entry;
+        private ByteBuffer pooled;
+        private boolean eof;
+
+        EntryInflaterInputStream(InputStream in, Entry entry) {
+            super(in, new Inflater(true), 1);
+            this.entry = entry;
+            pooled = IoUtils.getStreamBufferPool().take();
+            buf = pooled.array();
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if(eof) {
+                throw new EOFException("Unexpected end of ZIP entry " + entry.getName());
+            }
+            len = in.read(buf, 0, buf.length);
+            if(len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+                if(pooled != null) {
+                    IoUtils.getStreamBufferPool().release(pooled);
+                    pooled = null;
+                }
+            }
+        }
+    }
+
+    private class ChannelInputStream extends InputStream {
+
+        private long position;
+        private long remaining;
+
+        ChannelInputStream(long position, long length) {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(remaining <= 0) {
+                return -1;
+            }
+            final int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if(read < 0) {
+                throw new EOFException("Unexpected end of " + file.getAbsolutePath());
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            final long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes ZIP archives out of entries whose content has already been
+ * compressed (or is meant to be stored as is). Unlike {@link java.util.zip.ZipOutputStream}
+ * the caller supplies the method, CRC and sizes of each entry, which allows
+ * entries to be compressed elsewhere (e.g. on other threads) or copied raw
+ * from another archive.
+ *
+ * Entry sizes and the CRC are always written to the local header,
+ * i.e. no data descriptors are used. ZIP64 end records are written when
+ * the number of entries requires them, individual entries and offsets
+ * are limited to 4GB.
+ *
+ * @author Alexey Loubyansky
+ */
+public class ZipWriter implements Closeable {
+
+    static final int LOCSIG = 0x04034b50;
+    static final int CENSIG = 0x02014b50;
+    static final int ENDSIG = 0x06054b50;
+    static final int ZIP64_ENDSIG = 0x06064b50;
+    static final int ZIP64_LOCSIG = 0x07064b50;
+
+    static final int LOCHDR = 30;
+    static final int CENHDR = 46;
+
+    private static final int UTF8_FLAG = 0x800;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private static class CentralRecord {
+        final byte[] name;
+        final int method;
+        final long dosTime;
+        long crc;
+        final long compressedSize;
+        final long size;
+        final long offset;
+
+        CentralRecord(byte[] name, int method, long dosTime, long crc, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+
+    private final File file;
+    private final OutputStream out;
+    private final List<CentralRecord> central = new ArrayList<CentralRecord>();
+    private final byte[] header = new byte[CENHDR];
+    private long written;
+    private boolean closed;
+
+    public ZipWriter(File file) throws IOException {
+        this(file, new FileOutputStream(file));
+    }
+
+    public ZipWriter(OutputStream out) {
+        this(null, out);
+    }
+
+    private ZipWriter(File file, OutputStream out) {
+        assert out != null : "out is null";
+        this.file = file;
+        this.out = new BufferedOutputStream(out, 65536);
+    }
+
+    /**
+     * Number of bytes written so far, i.e. the offset of the next local header.
+     */
+    public long getOffset() {
+        return written;
+    }
+
+    public int getEntryCount() {
+        return central.size();
+    }
+
+    /**
+     * Writes an entry whose compressed content is in the buffer.
+     *
+     * @param entry  entry with the name, method, CRC, sizes and (optionally) time set
+     * @param data  compressed content
+     * @param off  offset of the content in the buffer
+     * @param len  length of the compressed content
+     * @return  offset of the entry's local header in the archive
+     * @throws IOException  in case of a failure
+     */
+    public long writeEntry(ZipEntry entry, byte[] data, int off, int len) throws IOException {
+        final long offset = writeLocalHeader(entry, len);
+        out.write(data, off, len);
+        written += len;
+        return offset;
+    }
+
+    /**
+     * Writes an entry copying exactly {@code entry.getCompressedSize()} bytes
+     * of compressed content from the stream.
+     *
+     * @param entry  entry with the name, method, CRC, sizes and (optionally) time set
+     * @param data  stream of compressed content
+     * @return  offset of the entry's local header in the archive
+     * @throws IOException  in case of a failure
+     */
+    public long writeEntry(ZipEntry entry, InputStream data) throws IOException {
+        final long compressedSize = entry.getCompressedSize();
+        final long offset = writeLocalHeader(entry, compressedSize);
+        final long copied = IoUtils.copyStream(data, out, compressedSize);
+        if(copied < compressedSize) {
+            throw new IOException("Unexpected end of content of " + entry.getName() + ", " + (compressedSize - copied) + " bytes missing");
+        }
+        written += compressedSize;
+        return offset;
+    }
+
+    /**
+     * Replaces the content of a stored entry written earlier with as many bytes
+     * and updates its CRC. This allows an entry to be written ahead of the entries
+     * its content depends on, e.g. an index of their offsets.
+     * Only supported by writers of a file.
+     *
+     * @param offset  offset of the entry's local header
+     * @param data  new content of the entry
+     * @throws IOException  in case of a failure
+     */
+    public void replaceStored(long offset, byte[] data) throws IOException {
+        if(closed) {
+            throw new IOException("ZIP writer is closed");
+        }
+        if(file == null) {
+            throw new IOException("Only entries written to a file can be replaced");
+        }
+        CentralRecord rec = null;
+        for(CentralRecord candidate : central) {
+            if(candidate.offset == offset) {
+                rec = candidate;
+                break;
+            }
+        }
+        if(rec == null) {
+            throw new IOException("No entry at offset " + offset);
+        }
+        if(rec.method != ZipEntry.STORED || rec.size != data.length) {
+            throw new IOException("Entry at offset " + offset + " is not a stored entry of " + data.length + " bytes");
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        rec.crc = crc.getValue();
+
+        out.flush();
+        final byte[] crcBytes = new byte[4];
+        putInt(crcBytes, 0, rec.crc);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            write(channel, ByteBuffer.wrap(crcBytes), offset + 14);
+            write(channel, ByteBuffer.wrap(data), offset + LOCHDR + rec.name.length);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while(buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    private long writeLocalHeader(ZipEntry entry, long compressedSize) throws IOException {
+        if(closed) {
+            throw new IOException("ZIP writer is closed");
+        }
+        final int method = entry.getMethod() == -1 ? ZipEntry.DEFLATED : entry.getMethod();
+        final long size = entry.getSize();
+        final long crc = entry.getCrc();
+        if(size < 0 || crc < 0) {
+            throw new IOException("Size and CRC of " + entry.getName() + " have to be set");
+        }
+        if(size > MAX_32 || compressedSize > MAX_32 || written > MAX_32) {
+            throw new IOException("ZIP64 entries are not supported: " + entry.getName());
+        }
+        if(method == ZipEntry.STORED && size != compressedSize) {
+            throw new IOException("Compressed size of stored entry " + entry.getName() + " does not match its size");
+        }
+        final byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+        if(name.length > MAX_16) {
+            throw new IOException("Entry name is too long: " + entry.getName());
+        }
+        final long dosTime = javaToDosTime(entry.getTime() == -1 ? System.currentTimeMillis() : entry.getTime());
+
+        int i = putInt(header, 0, LOCSIG);
+        i = putShort(header, i, method == ZipEntry.STORED ? 10 : 20);
+        i = putShort(header, i, UTF8_FLAG);
+        i = putShort(header, i, method);
+        i = putInt(header, i, dosTime);
+        i = putInt(header, i, crc);
+        i = putInt(header, i, compressedSize);
+        i = putInt(header, i, size);
+        i = putShort(header, i, name.length);
+        i = putShort(header, i, 0);
+        out.write(header, 0, i);
+        out.write(name);
+
+        final long offset = written;
+        central.add(new CentralRecord(name, method, dosTime, crc, compressedSize, size, offset));
+        written += LOCHDR + name.length;
+        return offset;
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            final long cenOffset = written;
+            for(CentralRecord rec : central) {
+                int i = putInt(header, 0, CENSIG);
+                i = putShort(header, i, 20);
+                i = putShort(header, i, rec.method == ZipEntry.STORED ? 10 : 20);
+                i = putShort(header, i, UTF8_FLAG);
+                i = putShort(header, i, rec.method);
+                i = putInt(header, i, rec.dosTime);
+                i = putInt(header, i, rec.crc);
+                i = putInt(header, i, rec.compressedSize);
+                i = putInt(header, i, rec.size);
+                i = putShort(header, i, rec.name.length);
+                i = putShort(header, i, 0); // extra
+                i = putShort(header, i, 0); // comment
+                i = putShort(header, i, 0); // disk number
+                i = putShort(header, i, 0); // internal attributes
+                i = putInt(header, i, 0); // external attributes
+                i = putInt(header, i, rec.offset);
+                out.write(header, 0, i);
+                out.write(rec.name);
+                written += CENHDR + rec.name.length;
+            }
+            final long cenSize = written - cenOffset;
+            final int count = central.size();
+            final boolean zip64 = count >= MAX_16 || cenOffset >= MAX_32 || cenSize >= MAX_32;
+            if(zip64) {
+                final long zip64EndOffset = written;
+                final byte[] rec = new byte[56 + 20];
+                int i = putInt(rec, 0, ZIP64_ENDSIG);
+                i = putLong(rec, i, 44);
+                i = putShort(rec, i, 45);
+                i = putShort(rec, i, 45);
+                i = putInt(rec, i, 0);
+                i = putInt(rec, i, 0);
+                i = putLong(rec, i, count);
+                i = putLong(rec, i, count);
+                i = putLong(rec, i, cenSize);
+                i = putLong(rec, i, cenOffset);
+                i = putInt(rec, i, ZIP64_LOCSIG);
+                i = putInt(rec, i, 0);
+                i = putLong(rec, i, zip64EndOffset);
+                i = putInt(rec, i, 1);
+                out.write(rec, 0, i);
+                written += i;
+            }
+            int i = putInt(header, 0, ENDSIG);
+            i = putShort(header, i, 0);
+            i = putShort(header, i, 0);
+            i = putShort(header, i, zip64 ? MAX_16 : count);
+            i = putShort(header, i, zip64 ? MAX_16 : count);
+            i = putInt(header, i, zip64 ? MAX_32 : cenSize);
+            i = putInt(header, i, zip64 ? MAX_32 : cenOffset);
+            i = putShort(header, i, 0);
+            out.write(header, 0, i);
+            written += i;
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    static long javaToDosTime(long time) {
+        final LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        final int year = ldt.getYear() - 1980;
+        if (year < 0) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year << 25 | ldt.getMonthValue() << 21 | ldt.getDayOfMonth() << 16 | ldt.getHour() << 11
+                | ldt.getMinute() << 5 | ldt.getSecond() >> 1) & MAX_32;
+    }
+
+    private static int putShort(byte[] buf, int i, int value) {
+        buf[i++] = (byte) value;
+        buf[i++] = (byte) (value >>> 8);
+        return i;
+    }
+
+    private static int putInt(byte[] buf, int i, long value) {
+        buf[i++] = (byte) value;
+        buf[i++] = (byte) (value >>> 8);
+        buf[i++] = (byte) (value >>> 16);
+        buf[i++] = (byte) (value >>> 24);
+        return i;
+    }
+
+    private static int putLong(byte[] buf, int i, long value) {
+        i = putInt(buf, i, value);
+        return putInt(buf, i, value >>> 32);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.plugin;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.installation.InstallRequest;
+import org.eclipse.aether.installation.InstallationException;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.jboss.pm.GAV;
+import org.jboss.pm.provisioning.FeaturePackRepository;
+import org.jboss.pm.provisioning.ProvisioningException;
+
+/**
+ * Feature pack repository backed by the Maven repository system
+ * of the current build.
+ *
+ * @author Alexey Loubyansky
+ */
+class AetherFeaturePackRepository implements FeaturePackRepository {
+
+    private final RepositorySystem repoSystem;
+    private final RepositorySystemSession repoSession;
+    private final List<RemoteRepository> remoteRepos;
+
+    AetherFeaturePackRepository(RepositorySystem repoSystem, RepositorySystemSession repoSession, List<RemoteRepository> remoteRepos) {
+        this.repoSystem = repoSystem;
+        this.repoSession = repoSession;
+        this.remoteRepos = remoteRepos;
+    }
+
+    @Override
+    public File resolve(GAV gav) throws ProvisioningException {
+        final ArtifactRequest req = new ArtifactRequest();
+        req.setArtifact(new DefaultArtifact(gav.getGroupId(), gav.getArtifactId(), "zip", gav.getVersion()));
+        req.setRepositories(remoteRepos);
+        try {
+            return repoSystem.resolveArtifact(repoSession, req).getArtifact().getFile();
+        } catch (ArtifactResolutionException e) {
+            throw new ProvisioningException("Failed to resolve artifact " + gav, e);
+        }
+    }
+
+    @Override
+    public void install(GAV gav, File featurePack) throws ProvisioningException {
+        final Artifact artifact = new DefaultArtifact(gav.getGroupId(), gav.getArtifactId(), null, "zip", gav.getVersion(), null, featurePack);
+        final InstallRequest installReq = new InstallRequest();
+        installReq.addArtifact(artifact);
+        try {
+            repoSystem.install(repoSession, installReq);
+        } catch (InstallationException e) {
+            throw new ProvisioningException("Failed to install " + gav, e);
+        }
+    }
+}
@@ -36,12 +36,11 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
-import org.eclipse.aether.artifact.Artifact;
-import org.eclipse.aether.artifact.DefaultArtifact;
-import org.eclipse.aether.installation.InstallRequest;
-import org.eclipse.aether.installation.InstallationException;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.jboss.pm.Constants;
+import org.jboss.pm.GAV;
+import org.jboss.pm.provisioning.ProvisioningEngine;
+import org.jboss.pm.provisioning.ProvisioningException;
 
 /**
  *
@@ -70,27 +69,13 @@ public class FeaturePackInstallMojo extends AbstractMojo {
         if(workdirPath == null) {
             throw new MojoExecutionException("work dir is missing");
         }
-        final File workDir = new File(workdirPath, Constants.FEATURE_PACKS);
-        if(!workDir.exists()) {
-            throw new MojoExecutionException("work dir does not exist: " + workDir.getAbsolutePath());
-        }
-
-        final InstallRequest installReq = new InstallRequest();
-        for(File groupDir : workDir.listFiles()) {
-            for(File artifactDir : groupDir.listFiles()) {
-                for(File versionFile : artifactDir.listFiles()) {
-                    final Artifact artifact = new DefaultArtifact(groupDir.getName(), artifactDir.getName(), null, "zip", versionFile.getName(), null, versionFile);
-                    System.out.println("FP: " + artifact);
-                    installReq.addArtifact(artifact);
-                }
-            }
-        }
-
         try {
-            repoSystem.install(repoSession, installReq);
-        } catch (InstallationException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            for(GAV gav : new ProvisioningEngine(new AetherFeaturePackRepository(repoSystem, repoSession, remoteRepos))
+                    .install(new File(workdirPath))) {
+                System.out.println("FP: " + gav);
+            }
+        } catch (ProvisioningException e) {
+            throw new MojoExecutionException("Failed to install feature packs", e);
         }
     }
 }
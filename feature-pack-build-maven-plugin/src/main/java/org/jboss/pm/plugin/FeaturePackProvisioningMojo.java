@@ -23,16 +23,10 @@
 package org.jboss.pm.plugin;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
-
-import javax.xml.stream.XMLStreamException;
+import java.util.Locale;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -43,7 +37,6 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.util.IOUtil;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
@@ -64,9 +57,10 @@ import org.eclipse.aether.resolution.VersionRequest;
 import org.eclipse.aether.resolution.VersionResolutionException;
 import org.eclipse.aether.resolution.VersionResult;
 import org.jboss.pm.Constants;
-import org.jboss.pm.GAV;
-import org.jboss.pm.provisioning.ProvisioningMetaData;
-import org.jboss.pm.provisioning.xml.ProvisioningXmlParser;
+import org.jboss.pm.provisioning.ContentStore;
+import org.jboss.pm.provisioning.Durability;
+import org.jboss.pm.provisioning.ProvisioningEngine;
+import org.jboss.pm.provisioning.ProvisioningException;
 import org.jboss.pm.util.IoUtils;
 
 /**
@@ -108,52 +102,33 @@ public class FeaturePackProvisioningMojo extends AbstractMojo {
         }
         final File installDir = new File(installDirArg);
 
-        ProvisioningMetaData metadata;
-        FileInputStream fis = null;
-        try {
-            fis = new FileInputStream(provXml);
-            metadata = new ProvisioningXmlParser().parse(fis);
-        } catch (FileNotFoundException e) {
-            throw new MojoExecutionException("File not found " + provXml.getAbsolutePath(), e);
-        } catch (XMLStreamException e) {
-            throw new MojoExecutionException("Failed to parse " + provXml.getAbsolutePath(), e);
-        } finally {
-            IoUtils.safeClose(fis);
+        final ProvisioningEngine engine = new ProvisioningEngine(new AetherFeaturePackRepository(repoSystem, repoSession, remoteRepos));
+        final Integer threads = getPositiveInt(Constants.PM_INSTALL_THREADS);
+        if(threads != null) {
+            engine.setThreads(threads);
         }
-
-        System.out.println("Feature packs: " + metadata);
-
-        final Collection<GAV> featurePacks = metadata.getFeaturePacks();
-        if(featurePacks.isEmpty()) {
-            return;
+        final Integer parallelism = getPositiveInt(Constants.PM_INSTALL_PARALLELISM);
+        if(parallelism != null) {
+            engine.setParallelism(parallelism);
         }
-        final List<ArtifactRequest> requests;
-        if(featurePacks.size() ==  1) {
-            requests = Collections.singletonList(getArtifactRequest(featurePacks.iterator().next()));
-        } else {
-            requests = new ArrayList<ArtifactRequest>(featurePacks.size());
-            for(GAV gav : featurePacks) {
-                requests.add(getArtifactRequest(gav));
-            }
-        }
-
-        final List<ArtifactResult> results;
-        try {
-            results = repoSystem.resolveArtifacts(repoSession, requests);
-        } catch ( ArtifactResolutionException e ) {
-            throw new MojoExecutionException("Failed to resolve artifacts " + featurePacks, e);
+        if(Boolean.parseBoolean(repoSession.getSystemProperties().get(Constants.PM_INSTALL_STORE))) {
+            engine.setContentStore(ContentStore.getDefault());
         }
-
-        if(!installDir.exists()) {
-            installDir.mkdirs();
-        }
-        for(ArtifactResult res : results) {
+        engine.setStaged(Boolean.parseBoolean(repoSession.getSystemProperties().get(Constants.PM_INSTALL_STAGED)));
+        final String durability = repoSession.getSystemProperties().get(Constants.PM_INSTALL_DURABILITY);
+        if(durability != null) {
             try {
-                ZipUtils.unzip(res.getArtifact().getFile(), installDir);
-            } catch (IOException e) {
-                throw new MojoExecutionException("Failed to unzip " + res.getArtifact().getFile().getAbsolutePath() + " to " + installDir.getAbsolutePath(), e);
+                engine.setDurability(Durability.valueOf(durability.toUpperCase(Locale.ENGLISH)));
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException("Invalid value of " + Constants.PM_INSTALL_DURABILITY + ": " + durability
+                        + ", expected one of " + Arrays.asList(Durability.values()), e);
             }
         }
+        try {
+            engine.provision(provXml, installDir);
+        } catch (ProvisioningException e) {
+            throw new MojoExecutionException("Failed to provision " + provXml.getAbsolutePath(), e);
+        }
         //collectDependencies(artifact);
         //resolveDependencies(artifact);
         //versionRequest(artifact);
@@ -239,25 +214,28 @@ public class FeaturePackProvisioningMojo extends AbstractMojo {
         if(targetFile.exists()) {
             targetFile.delete();
         }
-        FileOutputStream fos = null;
-        FileInputStream fis = null;
         try {
-            fos = new FileOutputStream(targetFile);
-            fis = new FileInputStream(result.getArtifact().getFile());
-            IOUtil.copy(fis, fos);
+            IoUtils.copy(result.getArtifact().getFile(), targetFile);
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
-        } finally {
-            IOUtil.close(fos);
-            IOUtil.close(fis);
         }
     }
 
-    private ArtifactRequest getArtifactRequest(GAV gav) {
-        final ArtifactRequest req = new ArtifactRequest();
-        req.setArtifact(new DefaultArtifact(gav.getGroupId(), gav.getArtifactId(), "zip", gav.getVersion()));
-        req.setRepositories(remoteRepos);
-        return req;
+    private Integer getPositiveInt(String property) throws MojoExecutionException {
+        final String value = repoSession.getSystemProperties().get(property);
+        if(value == null) {
+            return null;
+        }
+        final int i;
+        try {
+            i = Integer.parseInt(value);
+        } catch(NumberFormatException e) {
+            throw new MojoExecutionException("Invalid value of " + property + ": " + value, e);
+        }
+        if(i < 1) {
+            throw new MojoExecutionException("Invalid value of " + property + ": " + value);
+        }
+        return i;
     }
 }
@@ -22,28 +22,33 @@
 
 package org.jboss.pm.cli;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.Properties;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import javax.xml.stream.XMLStreamException;
 
-import org.apache.maven.shared.invoker.DefaultInvocationRequest;
-import org.apache.maven.shared.invoker.DefaultInvoker;
-import org.apache.maven.shared.invoker.InvocationRequest;
-import org.apache.maven.shared.invoker.InvocationResult;
-import org.apache.maven.shared.invoker.Invoker;
-import org.apache.maven.shared.invoker.MavenInvocationException;
 import org.jboss.aesh.cl.CommandDefinition;
 import org.jboss.aesh.cl.Option;
 import org.jboss.aesh.console.command.invocation.CommandInvocation;
-import org.jboss.pm.Constants;
 import org.jboss.pm.build.FeaturePackBuild;
 import org.jboss.pm.build.PMBuildException;
 import org.jboss.pm.def.InstallationDef;
 import org.jboss.pm.def.InstallationDefException;
+import org.jboss.pm.provisioning.LocalFeaturePackRepository;
+import org.jboss.pm.provisioning.ProvisioningEngine;
+import org.jboss.pm.provisioning.ProvisioningException;
+import org.jboss.pm.util.IoUtils;
+import org.jboss.pm.wildfly.def.WFInstallationDefBuilder;
 import org.jboss.pm.wildfly.xml.WFInstallationDefParser;
 
 /**
@@ -53,31 +58,85 @@ import org.jboss.pm.wildfly.xml.WFInstallationDefParser;
 @CommandDefinition(name="fp", description = "fp builder")
 public class FpCommand extends CommandBase {
 
-    private static final String INSTALL_FEATURE_PACKS_POM = "maven/install-feature-packs-pom.xml";
-
     private static final String WF_FP_DEF_XML = "wildfly-feature-pack-def.xml";
+    private static final String DEF_SNAPSHOT = "installation-def.snapshot";
 
-    @Option(name="install-dir", required=true)
+    @Option(name="install-dir", description="installation to build the feature packs from")
     private String installDirArg;
 
+    @Option(name="distribution", description="distribution ZIP to build the feature packs from instead of an unpacked installation")
+    private String distributionArg;
+
+    @Option(name="work-dir", description="directory to build the feature packs in, it is kept so that the next build can reuse unchanged entries")
+    private String workDirArg;
+
+    @Option(name="threads", description="number of feature packs to build concurrently")
+    private Integer threadsArg;
+
+    @Option(name="compression-threads", description="number of threads compressing feature pack entries")
+    private Integer compressionThreadsArg;
+
+    @Option(name="scan-threads", description="number of threads scanning the installation directories")
+    private Integer scanThreadsArg;
+
     @Override
     protected void runCommand(CommandInvocation ci) throws CommandExecutionException {
 
-        final File installDir = new File(installDirArg);
+        if((installDirArg == null) == (distributionArg == null)) {
+            throw new CommandExecutionException("Either install-dir or distribution has to be specified");
+        }
+        final File installDir = installDirArg == null ? null : new File(installDirArg);
+        final File distribution = distributionArg == null ? null : new File(distributionArg);
 
         final ClassLoader cl = Thread.currentThread().getContextClassLoader();
-        final InputStream wfInstallDef = cl.getResourceAsStream(WF_FP_DEF_XML);
-        if(wfInstallDef == null) {
+        final InputStream wfInstallDefStream = cl.getResourceAsStream(WF_FP_DEF_XML);
+        if(wfInstallDefStream == null) {
             throw new CommandExecutionException(WF_FP_DEF_XML + " not found");
         }
+        final byte[] wfInstallDef;
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            IoUtils.copyStreamAndClose(wfInstallDefStream, bytes);
+            wfInstallDef = bytes.toByteArray();
+        } catch (IOException e) {
+            throw new CommandExecutionException("failed to read " + WF_FP_DEF_XML, e);
+        }
+
+        // the definition is loaded from the snapshot in the kept work dir unless the installation changed
+        final File snapshot = workDirArg == null ? null : new File(workDirArg, DEF_SNAPSHOT);
 
+        final WFInstallationDefBuilder wfBuilder;
         final InstallationDef wfInstallation;
+        String distributionHome = null;
+        FileSystem distributionFs = null;
         try {
-            wfInstallation = new WFInstallationDefParser().parse(wfInstallDef).build(installDir);
+            wfBuilder = new WFInstallationDefParser().parse(new ByteArrayInputStream(wfInstallDef));
+            if(scanThreadsArg != null) {
+                wfBuilder.setScanThreads(scanThreadsArg);
+            }
+            final Path home;
+            if(distribution == null) {
+                home = installDir.toPath();
+            } else {
+                distributionFs = FileSystems.newFileSystem(distribution.toPath(), (ClassLoader) null);
+                home = getDistributionHome(distributionFs);
+                distributionHome = distributionFs.getPath("/").relativize(home).toString();
+            }
+            if(snapshot == null) {
+                wfInstallation = wfBuilder.build(home);
+            } else {
+                wfInstallation = wfBuilder.build(home, snapshot, MessageDigest.getInstance("SHA-1").digest(wfInstallDef));
+            }
         } catch (XMLStreamException e) {
             throw new CommandExecutionException("failed to parse " + WF_FP_DEF_XML, e);
         } catch (InstallationDefException e) {
             throw new CommandExecutionException("failed to build feature packs", e);
+        } catch (IOException e) {
+            throw new CommandExecutionException("failed to read " + distribution.getAbsolutePath(), e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new CommandExecutionException("failed to digest " + WF_FP_DEF_XML, e);
+        } finally {
+            IoUtils.safeClose(distributionFs);
         }
 
 /*        try {
@@ -87,47 +146,69 @@ public class FpCommand extends CommandBase {
             e.printStackTrace();
         }
 */
-        final File workDir = Util.createRandomTmpDir();
+        final File workDir;
+        if(workDirArg == null) {
+            workDir = Util.createRandomTmpDir();
+        } else {
+            workDir = new File(workDirArg);
+            if(!workDir.exists() && !workDir.mkdirs()) {
+                throw new CommandExecutionException("Failed to create " + workDir.getAbsolutePath());
+            }
+        }
         try {
-            FeaturePackBuild fpBuild = new FeaturePackBuild(wfInstallation, installDir, workDir);
-            fpBuild.buildFeaturePacks();
+            final FeaturePackBuild fpBuild;
+            if(distribution == null) {
+                fpBuild = new FeaturePackBuild(wfInstallation, installDir, workDir);
+            } else {
+                fpBuild = new FeaturePackBuild(wfInstallation, distribution, distributionHome, workDir);
+            }
+            if(threadsArg != null) {
+                fpBuild.setParallelism(threadsArg);
+            }
+            if(compressionThreadsArg != null) {
+                fpBuild.setCompressionThreads(compressionThreadsArg);
+            }
+            if(wfBuilder.getCompressionPolicy() != null) {
+                fpBuild.setCompressionPolicy(wfBuilder.getCompressionPolicy());
+            }
+            ci.println(fpBuild.buildFeaturePacks().toString());
 //            final File tmpDir = new File(new File("").getAbsolutePath(), "workdir");
 //            tmpDir.mkdir();
 //            IoUtils.copyFile(workDir, tmpDir);
             install(workDir);
         } catch (PMBuildException e) {
-            e.printStackTrace();
+            throw new CommandExecutionException("failed to build feature packs", e);
         } finally {
-            Util.recursiveDelete(workDir);
+            if(workDirArg == null) {
+                Util.recursiveDelete(workDir);
+            }
         }
 
     }
 
-    private void install(final File workDir) throws CommandExecutionException {
-        final InputStream pomIs = Util.getResourceStream(INSTALL_FEATURE_PACKS_POM);
-        try {
-            InvocationRequest request = new DefaultInvocationRequest();
-
-            final Properties props = new Properties();
-            props.setProperty(Constants.PM_INSTALL_WORK_DIR, workDir.getAbsolutePath());
-            request.setProperties(props);
-
-            request.setPomFile(Util.saveAs(pomIs, new File(workDir, "pom.xml")));
-            request.setGoals(Collections.singletonList("compile"));
-
-            Invoker invoker = new DefaultInvoker();
-            InvocationResult result;
-            try {
-                result = invoker.execute(request);
-                if (result.getExitCode() != 0) {
-                    throw new IllegalStateException("Build failed.");
+    /**
+     * Distributions are usually packaged with a single top level directory
+     * which is the installation home, otherwise the root is taken as the home.
+     */
+    private static Path getDistributionHome(FileSystem fs) throws IOException {
+        final Path root = fs.getPath("/");
+        Path home = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for(Path child : stream) {
+                if(home != null || !Files.isDirectory(child)) {
+                    return root;
                 }
-            } catch (MavenInvocationException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                home = child;
             }
-        } catch (IOException e) {
-            throw new CommandExecutionException("Failed to copy " + INSTALL_FEATURE_PACKS_POM);
+        }
+        return home == null ? root : home;
+    }
+
+    private void install(final File workDir) throws CommandExecutionException {
+        try {
+            new ProvisioningEngine(LocalFeaturePackRepository.getDefault()).install(workDir);
+        } catch (ProvisioningException e) {
+            throw new CommandExecutionException("Failed to install feature packs", e);
         }
     }
 }
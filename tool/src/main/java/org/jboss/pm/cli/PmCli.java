@@ -44,6 +44,7 @@ public class PmCli {
                 .addCommand(new ExitCommand())
                 .addCommand(new PmCommand())
                 .addCommand(new FpCommand())
+                .addCommand(new StatusCommand())
                 .create();
 
         aeshConsole.start();
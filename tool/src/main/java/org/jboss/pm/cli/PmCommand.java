@@ -22,21 +22,18 @@
 package org.jboss.pm.cli;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Collections;
-import java.util.Properties;
+import java.util.Arrays;
+import java.util.Locale;
 
-import org.apache.maven.shared.invoker.DefaultInvocationRequest;
-import org.apache.maven.shared.invoker.DefaultInvoker;
-import org.apache.maven.shared.invoker.InvocationRequest;
-import org.apache.maven.shared.invoker.InvocationResult;
-import org.apache.maven.shared.invoker.Invoker;
-import org.apache.maven.shared.invoker.MavenInvocationException;
 import org.jboss.aesh.cl.CommandDefinition;
 import org.jboss.aesh.cl.Option;
 import org.jboss.aesh.console.command.invocation.CommandInvocation;
 import org.jboss.pm.Constants;
+import org.jboss.pm.provisioning.ContentStore;
+import org.jboss.pm.provisioning.Durability;
+import org.jboss.pm.provisioning.LocalFeaturePackRepository;
+import org.jboss.pm.provisioning.ProvisioningEngine;
+import org.jboss.pm.provisioning.ProvisioningException;
 
 /**
  *
@@ -45,14 +42,27 @@ import org.jboss.pm.Constants;
 @CommandDefinition(name="pm", description="pm description")
 class PmCommand extends CommandBase {
 
-    private static final String PROVISIONING_POM_XML = "maven/provisioning-pom.xml";
-
     @Option(name="provisioning-xml")
     private String provisioningXmlArg;
 
     @Option(name="install-dir")
     private String installDirArg;
 
+    @Option(name="store", hasValue=false, description="link the installed files from the content store at " + Constants.PM_STORE_DIR + " or ~/.pm/store")
+    private boolean store;
+
+    @Option(name="store-dir", description="content store directory to link the installed files from")
+    private String storeDirArg;
+
+    @Option(name="copy", description="comma-separated paths copied from the content store instead of linked, by default the configuration and data directories")
+    private String copyArg;
+
+    @Option(name="staged", hasValue=false, description="provision in a staging directory and switch it into place when complete")
+    private boolean staged;
+
+    @Option(name="durability", description="what is forced to disk when staging: none, commit or entry")
+    private String durabilityArg;
+
     @Override
     protected void runCommand(CommandInvocation ci) throws CommandExecutionException {
 
@@ -79,46 +89,32 @@ class PmCommand extends CommandBase {
             installDir = new File(installDirArg);
         }
 
-        final ClassLoader cl = Thread.currentThread().getContextClassLoader();
-        final InputStream pomIs = cl.getResourceAsStream(PROVISIONING_POM_XML);
-        if(pomIs == null) {
-            throw new CommandExecutionException(PROVISIONING_POM_XML + " not found");
-        }
-
-        final File workDir = Util.createRandomTmpDir();
         try {
-            Util.copy(provisioningFile, new File(workDir, Constants.PROVISIONING_XML));
-        } catch(IOException e) {
-            throw new CommandExecutionException("Failed to copy " + provisioningFile.getAbsolutePath() + " to the work dir.");
-        }
-
-        try {
-            InvocationRequest request = new DefaultInvocationRequest();
-
-            final Properties props = new Properties();
-            props.setProperty(Constants.PM_INSTALL_DIR, installDir.getAbsolutePath());
-            props.setProperty(Constants.PROVISIONING_XML, provisioningFile.getAbsolutePath());
-            request.setProperties(props);
-
-            request.setPomFile(Util.saveAs(pomIs, new File(workDir, "pom.xml")));
-            request.setGoals(Collections.singletonList("compile"));
-
-            Invoker invoker = new DefaultInvoker();
-            InvocationResult result;
-            try {
-                result = invoker.execute(request);
-                if (result.getExitCode() != 0) {
-                    throw new IllegalStateException("Build failed.");
+            final ProvisioningEngine engine = new ProvisioningEngine(LocalFeaturePackRepository.getDefault());
+            if(store || storeDirArg != null) {
+                final ContentStore contentStore = storeDirArg == null ? ContentStore.getDefault() : new ContentStore(new File(storeDirArg));
+                if(copyArg != null) {
+                    contentStore.clearCopiedPaths();
+                    for(String path : copyArg.split(",")) {
+                        path = path.trim();
+                        if(!path.isEmpty()) {
+                            contentStore.addCopiedPath(path);
+                        }
+                    }
+                }
+                engine.setContentStore(contentStore);
+            }
+            engine.setStaged(staged);
+            if(durabilityArg != null) {
+                try {
+                    engine.setDurability(Durability.valueOf(durabilityArg.toUpperCase(Locale.ENGLISH)));
+                } catch (IllegalArgumentException e) {
+                    throw new CommandExecutionException("durability must be one of " + Arrays.asList(Durability.values()));
                 }
-            } catch (MavenInvocationException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
             }
-        } catch (IOException e1) {
-            throw new CommandExecutionException("Failed to copy pom.xml to the work dir.");
-        } finally {
-            Util.recursiveDelete(workDir);
+            engine.provision(provisioningFile, installDir);
+        } catch (ProvisioningException e) {
+            throw new CommandExecutionException("Failed to provision " + provisioningFile.getAbsolutePath(), e);
         }
-
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.cli;
+
+import java.io.File;
+import java.util.List;
+
+import org.jboss.aesh.cl.CommandDefinition;
+import org.jboss.aesh.cl.Option;
+import org.jboss.aesh.console.command.invocation.CommandInvocation;
+import org.jboss.pm.provisioning.InstallationVerifier;
+import org.jboss.pm.provisioning.ProvisioningException;
+
+/**
+ * Reports the files of a provisioned installation which have been
+ * modified, deleted or added since it was provisioned.
+ *
+ * @author Alexey Loubyansky
+ */
+@CommandDefinition(name="status", description="verify the installation against its provisioned state")
+class StatusCommand extends CommandBase {
+
+    @Option(name="install-dir", description="installation to verify, the current directory by default")
+    private String installDirArg;
+
+    @Option(name="threads", description="number of threads checking the files")
+    private Integer threadsArg;
+
+    @Override
+    protected void runCommand(CommandInvocation ci) throws CommandExecutionException {
+        final File installDir = new File(installDirArg == null ? "" : installDirArg).getAbsoluteFile();
+        final InstallationVerifier verifier = new InstallationVerifier();
+        if(threadsArg != null) {
+            verifier.setThreads(threadsArg);
+        }
+        final InstallationVerifier.Report report;
+        try {
+            report = verifier.verify(installDir);
+        } catch (ProvisioningException e) {
+            throw new CommandExecutionException("Failed to verify " + installDir.getAbsolutePath(), e);
+        }
+        if(report.isIntact()) {
+            ci.println(installDir.getAbsolutePath() + " is intact");
+            return;
+        }
+        print(ci, "modified", report.getModified());
+        print(ci, "missing", report.getMissing());
+        print(ci, "extra", report.getExtra());
+    }
+
+    private static void print(CommandInvocation ci, String status, List<String> paths) {
+        for(String path : paths) {
+            ci.println(status + ": " + path);
+        }
+    }
+}
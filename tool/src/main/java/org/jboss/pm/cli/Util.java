@@ -23,14 +23,12 @@
 package org.jboss.pm.cli;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.UUID;
 
-import org.codehaus.plexus.util.IOUtil;
+import org.jboss.pm.util.IoUtils;
 
 
 /**
@@ -71,16 +69,7 @@ class Util {
     }
 
     static void copy(File src, File trg) throws IOException {
-        FileInputStream input = null;
-        FileOutputStream output = null;
-        try {
-            input = new FileInputStream(src);
-            output = new FileOutputStream(trg);
-            IOUtil.copy(input, output);
-        } finally {
-            IOUtil.close(input);
-            IOUtil.close(output);
-        }
+        IoUtils.copy(src, trg);
     }
 
     static InputStream getResourceStream(String resource) throws CommandExecutionException {
@@ -93,13 +82,10 @@ class Util {
     }
 
     static File saveAs(final InputStream is, final File f) throws FileNotFoundException, IOException {
-        FileOutputStream fos = null;
         try {
-            fos = new FileOutputStream(f);
-            IOUtil.copy(is, fos);
+            IoUtils.copy(is, f);
         } finally {
-            IOUtil.close(is);
-            IOUtil.close(fos);
+            IoUtils.safeClose(is);
         }
         return f;
     }
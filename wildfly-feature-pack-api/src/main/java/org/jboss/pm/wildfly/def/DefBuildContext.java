@@ -22,34 +22,214 @@
 
 package org.jboss.pm.wildfly.def;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
+import org.jboss.pm.def.ContentPathPool;
+import org.jboss.pm.def.InstallationDefException;
 import org.jboss.pm.def.PackageDef.PackageDefBuilder;
 
 /**
+ * Context of building the WildFly installation definition. The context
+ * the build starts with is shared by all the builders. Each package is built
+ * with its own context derived from it, so packages can be built concurrently.
  *
  * @author Alexey Loubyansky
  */
 class DefBuildContext {
 
-    private final File homeDir;
-    private final File modulesDir;
+    /**
+     * Part of the definition built as a task in the scan pool.
+     */
+    interface Job<T> {
+        T run() throws InstallationDefException;
+    }
+
+    private static class JobFailure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        JobFailure(InstallationDefException cause) {
+            super(cause);
+        }
+    }
 
-    WFFeaturePackDefBuilder fpBuilder;
-    PackageDefBuilder pkgBuilder;
+    private static class JobTask<T> extends RecursiveTask<T> {
 
-    DefBuildContext(File homeDir, String modulesDir) {
+        private static final long serialVersionUID = 1L;
+
+        private final Job<T> job;
+
+        JobTask(Job<T> job) {
+            this.job = job;
+        }
+
+        @Override
+        protected T compute() {
+            try {
+                return job.run();
+            } catch (InstallationDefException e) {
+                throw new JobFailure(e);
+            }
+        }
+    }
+
+    private final Path homeDir;
+    private final Path modulesDir;
+    private final ForkJoinPool scanPool;
+    private final Map<String, Long> fingerprint;
+    private final ContentPathPool pathPool;
+
+    final FeaturePackSink fpSink;
+    final PackageDefBuilder pkgBuilder;
+
+    DefBuildContext(Path homeDir, String modulesDir, ForkJoinPool scanPool) {
         assert homeDir != null : "Home directory is missing";
         assert homeDir != null : "Modules directory is missing";
+        assert scanPool != null : "Scan pool is missing";
         this.homeDir = homeDir;
-        this.modulesDir = new File(homeDir, modulesDir);
+        this.modulesDir = homeDir.resolve(modulesDir);
+        this.scanPool = scanPool;
+        this.fingerprint = new ConcurrentHashMap<String, Long>();
+        this.pathPool = new ContentPathPool();
+        this.fpSink = null;
+        this.pkgBuilder = null;
+    }
+
+    private DefBuildContext(DefBuildContext parent, FeaturePackSink fpSink, PackageDefBuilder pkgBuilder) {
+        this.homeDir = parent.homeDir;
+        this.modulesDir = parent.modulesDir;
+        this.scanPool = parent.scanPool;
+        this.fingerprint = parent.fingerprint;
+        this.pathPool = parent.pathPool;
+        this.fpSink = fpSink;
+        this.pkgBuilder = pkgBuilder;
+    }
+
+    /**
+     * Context to build a package of a feature pack with.
+     */
+    DefBuildContext forPackage(FeaturePackSink fpSink, PackageDefBuilder pkgBuilder) {
+        assert fpSink != null : "Feature pack sink is missing";
+        assert pkgBuilder != null : "Package builder is missing";
+        return new DefBuildContext(this, fpSink, pkgBuilder);
     }
 
-    File getHomeDir() {
+    Path getHomeDir() {
         return homeDir;
     }
 
-    File getModulesDir() {
+    Path getModulesDir() {
         return modulesDir;
     }
+
+    /**
+     * Pool the directories are scanned in.
+     */
+    ForkJoinPool getScanPool() {
+        return scanPool;
+    }
+
+    /**
+     * Pool of the content paths of all the packages of the installation.
+     */
+    ContentPathPool getPathPool() {
+        return pathPool;
+    }
+
+    /**
+     * Modification times of the directories listed and the files read
+     * while building the definition by their paths relative to the home directory.
+     */
+    Map<String, Long> getFingerprint() {
+        return fingerprint;
+    }
+
+    void addFingerprint(Path path, long lastModified) {
+        fingerprint.put(getRelativePath(homeDir, path), lastModified);
+    }
+
+    void addFingerprint(Path path) throws InstallationDefException {
+        try {
+            addFingerprint(path, Files.getLastModifiedTime(path).toMillis());
+        } catch (IOException e) {
+            throw new InstallationDefException("Failed to read the modification time of " + path, e);
+        }
+    }
+
+    static String getRelativePath(Path homeDir, Path path) {
+        final String separator = path.getFileSystem().getSeparator();
+        final String relativePath = homeDir.relativize(path).toString();
+        return "/".equals(separator) ? relativePath : relativePath.replace(separator, "/");
+    }
+
+    /**
+     * Runs the jobs in the scan pool and returns their results in the order of the jobs.
+     */
+    <T> List<T> invokeAll(List<Job<T>> jobs) throws InstallationDefException {
+        switch(jobs.size()) {
+            case 0:
+                return Collections.emptyList();
+            case 1:
+                return Collections.singletonList(jobs.get(0).run());
+            default:
+                final List<JobTask<T>> tasks = new ArrayList<JobTask<T>>(jobs.size());
+                for(Job<T> job : jobs) {
+                    tasks.add(new JobTask<T>(job));
+                }
+                try {
+                    if(ForkJoinTask.getPool() == scanPool) {
+                        ForkJoinTask.invokeAll(tasks);
+                    } else {
+                        scanPool.invoke(new RecursiveAction() {
+                            private static final long serialVersionUID = 1L;
+                            @Override
+                            protected void compute() {
+                                invokeAll(tasks);
+                            }
+                        });
+                    }
+                    final List<T> results = new ArrayList<T>(tasks.size());
+                    for(JobTask<T> task : tasks) {
+                        results.add(task.join());
+                    }
+                    return results;
+                } catch (JobFailure e) {
+                    throw (InstallationDefException) e.getCause();
+                }
+        }
+    }
+
+    static String getName(Path path) {
+        final String name = path.getFileName().toString();
+        // directories of a ZIP file system may end with a slash
+        return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    /**
+     * Lists the directory adding it to the fingerprint.
+     */
+    List<Path> listChildren(Path dir) throws InstallationDefException {
+        addFingerprint(dir);
+        final List<Path> children = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for(Path child : stream) {
+                children.add(child);
+            }
+        } catch (IOException e) {
+            throw new InstallationDefException("Failed to read directory " + dir, e);
+        }
+        return children;
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.wildfly.def;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jboss.pm.def.PackageDef;
+
+/**
+ * Collects what the packages of a feature pack contribute to the feature pack
+ * itself, i.e. the module packages and the product info, while the packages
+ * are built concurrently.
+ *
+ * @author Alexey Loubyansky
+ */
+class FeaturePackSink {
+
+    private final boolean productRequired;
+    private final Queue<PackageDef> modulePackages = new ConcurrentLinkedQueue<PackageDef>();
+    private String productArtifactId;
+    private String productVersion;
+
+    FeaturePackSink(boolean productRequired) {
+        this.productRequired = productRequired;
+    }
+
+    void addModulePackage(PackageDef module) {
+        modulePackages.add(module);
+    }
+
+    Collection<PackageDef> getModulePackages() {
+        return new ArrayList<PackageDef>(modulePackages);
+    }
+
+    /**
+     * Whether the feature pack artifactId has not been configured
+     * and the product info has not been found yet.
+     */
+    synchronized boolean isProductRequired() {
+        return productRequired && productArtifactId == null;
+    }
+
+    /**
+     * Records the product info unless it has already been recorded.
+     */
+    synchronized void setProduct(String artifactId, String version) {
+        if(productArtifactId == null) {
+            productArtifactId = artifactId;
+            productVersion = version;
+        }
+    }
+
+    synchronized String getProductArtifactId() {
+        return productArtifactId;
+    }
+
+    synchronized String getProductVersion() {
+        return productVersion;
+    }
+}
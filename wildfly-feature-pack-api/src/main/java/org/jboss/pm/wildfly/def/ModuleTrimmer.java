@@ -0,0 +1,232 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.wildfly.def;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.pm.GAV;
+import org.jboss.pm.def.FeaturePackDef;
+import org.jboss.pm.def.GroupDef;
+import org.jboss.pm.def.InstallationDefException;
+import org.jboss.pm.def.PackageDef;
+import org.jboss.pm.provisioning.ProvisioningMetaData;
+
+/**
+ * Trims the modules of a feature pack down to the ones reachable from
+ * the root modules following the dependencies of the module packages,
+ * i.e. the dependencies declared in module.xml of the modules. A subsystem
+ * is kept by making its extension module a root.
+ *
+ * The result is either the feature pack without the unreachable module
+ * packages or a provisioning selection of the whole feature pack that
+ * excludes them. The module packages are recognized by their module.xml
+ * among their content, so the feature packs read from their index can be
+ * trimmed too.
+ *
+ * @author Alexey Loubyansky
+ */
+public class ModuleTrimmer {
+
+    private static final String MODULE_XML = "/module.xml";
+
+    private List<String> roots = Collections.emptyList();
+
+    public ModuleTrimmer addRootModule(String name) {
+        return addRootModule(name, null);
+    }
+
+    /**
+     * Adds a module whose dependencies are kept.
+     *
+     * @param name  module name
+     * @param slot  module slot or null for the main slot
+     * @return  this trimmer
+     */
+    public ModuleTrimmer addRootModule(String name, String slot) {
+        assert name != null : "name is null";
+        final String packageName = WFModulesDefBuilder.getPackageName(new ModuleXmlParser.ModuleRef(name, slot, false));
+        switch(roots.size()) {
+            case 0:
+                roots = Collections.singletonList(packageName);
+                break;
+            case 1:
+                roots = new ArrayList<String>(roots);
+            default:
+                roots.add(packageName);
+        }
+        return this;
+    }
+
+    public boolean hasRootModules() {
+        return !roots.isEmpty();
+    }
+
+    /**
+     * Names of the module packages of the feature pack reachable from the root modules.
+     *
+     * @param fpDef  feature pack
+     * @return  names of the reachable module packages
+     * @throws InstallationDefException  if a root module is not found in the feature pack
+     */
+    public Set<String> getReachableModules(FeaturePackDef fpDef) throws InstallationDefException {
+        return getReachableModules(fpDef, getModulePackages(fpDef));
+    }
+
+    /**
+     * Names of the module packages of the feature pack not reachable from the root modules.
+     *
+     * @param fpDef  feature pack
+     * @return  names of the unreachable module packages
+     * @throws InstallationDefException  if a root module is not found in the feature pack
+     */
+    public Set<String> getUnreachableModules(FeaturePackDef fpDef) throws InstallationDefException {
+        final Set<String> modules = getModulePackages(fpDef);
+        final Set<String> reachable = getReachableModules(fpDef, modules);
+        modules.removeAll(reachable);
+        return modules;
+    }
+
+    /**
+     * Returns the feature pack without the unreachable module packages.
+     * The dependencies of the remaining packages on them are removed too.
+     *
+     * @param fpDef  feature pack to trim
+     * @return  trimmed feature pack or the same one if all its modules are reachable
+     * @throws InstallationDefException  if a root module is not found in the feature pack
+     */
+    public FeaturePackDef trim(FeaturePackDef fpDef) throws InstallationDefException {
+        final Set<String> unreachable = getUnreachableModules(fpDef);
+        if(unreachable.isEmpty()) {
+            return fpDef;
+        }
+        final FeaturePackDef.FeaturePackDefBuilder fpBuilder = FeaturePackDef.builder(fpDef.getGAV());
+        for(GAV dependency : fpDef.getDependencies()) {
+            fpBuilder.addDependency(dependency);
+        }
+        for(String name : fpDef.getGroupNames()) {
+            if(!unreachable.contains(name)) {
+                fpBuilder.addGroup(removeDependencies(fpDef.getGroupDef(name), unreachable));
+            }
+        }
+        return fpBuilder.build();
+    }
+
+    /**
+     * Adds the feature pack to the provisioning metadata with the
+     * unreachable module packages excluded.
+     *
+     * @param fpDef  feature pack
+     * @param metadata  provisioning metadata to add the selection to
+     * @throws InstallationDefException  if a root module is not found in the feature pack
+     */
+    public void select(FeaturePackDef fpDef, ProvisioningMetaData metadata) throws InstallationDefException {
+        final Set<String> unreachable = getUnreachableModules(fpDef);
+        metadata.addFeaturePack(fpDef.getGAV());
+        for(String name : unreachable) {
+            metadata.addExcludedPackage(fpDef.getGAV(), name);
+        }
+    }
+
+    private Set<String> getReachableModules(FeaturePackDef fpDef, Set<String> modules) throws InstallationDefException {
+        final Deque<String> queue = new ArrayDeque<String>(roots.size());
+        for(String root : roots) {
+            if(!modules.contains(root)) {
+                throw new InstallationDefException("Root module " + root + " not found in feature pack " + fpDef.getGAV());
+            }
+            queue.add(root);
+        }
+        final Set<String> reachable = new HashSet<String>();
+        while(!queue.isEmpty()) {
+            final String name = queue.removeFirst();
+            // the dependencies on the modules of other feature packs are not followed
+            if(modules.contains(name) && reachable.add(name)) {
+                queue.addAll(fpDef.getGroupDef(name).getDependencies());
+            }
+        }
+        return reachable;
+    }
+
+    private static GroupDef removeDependencies(GroupDef groupDef, Set<String> removed) {
+        boolean affected = false;
+        for(String dependency : groupDef.getDependencies()) {
+            if(removed.contains(dependency)) {
+                affected = true;
+                break;
+            }
+        }
+        if(!affected) {
+            return groupDef;
+        }
+        final GroupDef.GroupDefBuilder builder;
+        if(groupDef instanceof PackageDef) {
+            final PackageDef.PackageDefBuilder pkgBuilder = PackageDef.packageBuilder(groupDef.getName());
+            if(groupDef.hasContent()) {
+                for(String path : groupDef.getContentPaths()) {
+                    pkgBuilder.addContentPath(path);
+                }
+            }
+            builder = pkgBuilder;
+        } else {
+            builder = GroupDef.groupBuilder(groupDef.getName());
+        }
+        for(String dependency : groupDef.getDependencies()) {
+            if(!removed.contains(dependency)) {
+                builder.addDependency(dependency);
+            }
+        }
+        return builder.build();
+    }
+
+    private static Set<String> getModulePackages(FeaturePackDef fpDef) {
+        final Set<String> modules = new HashSet<String>();
+        for(String name : fpDef.getGroupNames()) {
+            final GroupDef groupDef = fpDef.getGroupDef(name);
+            if(groupDef.hasContent() && isModule(name, groupDef.getContentPaths())) {
+                modules.add(name);
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * Whether the content includes module.xml in the directory matching the
+     * package name, i.e. the module name followed by the slot.
+     */
+    private static boolean isModule(String name, List<String> contentPaths) {
+        for(String path : contentPaths) {
+            if(path.endsWith(MODULE_XML)) {
+                final String dir = path.substring(0, path.length() - MODULE_XML.length()).replace('/', '.');
+                if(dir.endsWith(name) && (dir.length() == name.length() || dir.charAt(dir.length() - name.length() - 1) == '.')) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
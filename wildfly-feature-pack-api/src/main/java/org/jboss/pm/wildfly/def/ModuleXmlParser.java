@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.wildfly.def;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the module dependencies from module.xml. The content of module.xml
+ * is not validated, only the module elements of the dependencies element
+ * of a module and the target of a module alias are read, regardless of the
+ * version of the schema.
+ *
+ * @author Alexey Loubyansky
+ */
+class ModuleXmlParser {
+
+    static final String MAIN_SLOT = "main";
+
+    /**
+     * Reference to a module by its name and slot,
+     * e.g. a module dependency declared in module.xml.
+     */
+    static class ModuleRef {
+
+        private final String name;
+        private final String slot;
+        private final boolean optional;
+
+        ModuleRef(String name, String slot, boolean optional) {
+            this.name = name;
+            this.slot = slot == null ? MAIN_SLOT : slot;
+            this.optional = optional;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getSlot() {
+            return slot;
+        }
+
+        boolean isOptional() {
+            return optional;
+        }
+
+        @Override
+        public String toString() {
+            return name + ':' + slot;
+        }
+    }
+
+    private static final XMLInputFactory INPUT_FACTORY;
+
+    static {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        INPUT_FACTORY = factory;
+    }
+
+    static List<ModuleRef> parseDependencies(Path moduleXml) throws IOException {
+        try (InputStream is = Files.newInputStream(moduleXml)) {
+            final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                return parseDependencies(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse " + moduleXml.toAbsolutePath(), e);
+        }
+    }
+
+    private static List<ModuleRef> parseDependencies(XMLStreamReader reader) throws XMLStreamException {
+        List<ModuleRef> dependencies = Collections.emptyList();
+        // depth of the element, 1 is the root
+        int depth = 0;
+        boolean inDependencies = false;
+        while(reader.hasNext()) {
+            switch(reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    ++depth;
+                    final String name = reader.getLocalName();
+                    if(depth == 1) {
+                        if("module-alias".equals(name)) {
+                            final String target = reader.getAttributeValue(null, "target-name");
+                            return target == null ? Collections.<ModuleRef>emptyList()
+                                    : Collections.singletonList(new ModuleRef(target, reader.getAttributeValue(null, "target-slot"), false));
+                        }
+                    } else if(depth == 2) {
+                        inDependencies = "dependencies".equals(name);
+                    } else if(depth == 3 && inDependencies && "module".equals(name)) {
+                        final ModuleRef dependency = new ModuleRef(reader.getAttributeValue(null, "name"),
+                                reader.getAttributeValue(null, "slot"), Boolean.parseBoolean(reader.getAttributeValue(null, "optional")));
+                        if(dependency.getName() != null) {
+                            switch(dependencies.size()) {
+                                case 0:
+                                    dependencies = Collections.singletonList(dependency);
+                                    break;
+                                case 1:
+                                    dependencies = new ArrayList<ModuleRef>(dependencies);
+                                default:
+                                    dependencies.add(dependency);
+                            }
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if(--depth == 1) {
+                        inDependencies = false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return dependencies;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.pm.wildfly.def;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.jboss.pm.def.InstallationDefException;
+
+/**
+ * Looks for the modules, i.e. the directories containing module.xml,
+ * under a modules directory. Directories are listed in parallel, a task
+ * per directory, and each child is stat'ed once while listing its parent.
+ * Alternatively, only the directories of the modules selected by name are
+ * resolved. The module.xml of every module found is parsed for the module
+ * dependencies on the task that found it, so the parsing is parallel too.
+ *
+ * The modules are returned sorted by their directory path and their
+ * content paths are sorted too, so the result does not depend on the order
+ * the directories are listed or scanned in.
+ *
+ * @author Alexey Loubyansky
+ */
+class ModulesScanner {
+
+    private static final String MODULE_XML = "module.xml";
+
+    /**
+     * Module directory found by the scanner.
+     */
+    static class Module {
+
+        private final List<String> path;
+        private final Path dir;
+        private final List<String> content;
+        private final List<ModuleXmlParser.ModuleRef> dependencies;
+
+        private Module(List<String> path, Path dir, List<String> content, List<ModuleXmlParser.ModuleRef> dependencies) {
+            this.path = path;
+            this.dir = dir;
+            this.content = content;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Names of the directories between the modules directory
+         * and the module directory, the latter excluded.
+         */
+        List<String> getPath() {
+            return path;
+        }
+
+        Path getDir() {
+            return dir;
+        }
+
+        /**
+         * Paths of the files of the module relative to the module directory.
+         */
+        List<String> getContent() {
+            return content;
+        }
+
+        /**
+         * Dependencies declared in module.xml of the module.
+         */
+        List<ModuleXmlParser.ModuleRef> getDependencies() {
+            return dependencies;
+        }
+    }
+
+    private static class Child {
+
+        final Path path;
+        final String name;
+        final boolean directory;
+        final long lastModified;
+
+        Child(Path path, BasicFileAttributes attrs) {
+            this.path = path;
+            this.name = DefBuildContext.getName(path);
+            this.directory = attrs.isDirectory();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+        }
+    }
+
+    private static final Comparator<Child> BY_NAME = new Comparator<Child>() {
+        @Override
+        public int compare(Child o1, Child o2) {
+            return o1.name.compareTo(o2.name);
+        }
+    };
+
+    /**
+     * Scans the directory the way the modules have always been laid out,
+     * i.e. the module directories are looked for starting from the second
+     * level of directories under the modules directory. The scanned directories
+     * are added to the fingerprint of the context.
+     */
+    static List<Module> scan(DefBuildContext ctx, Path modulesDir) throws InstallationDefException {
+        ctx.addFingerprint(modulesDir);
+        final ForkJoinPool pool = ctx.getScanPool();
+        try {
+            final ScanTask task = new ScanTask(ctx, modulesDir, Collections.<String>emptyList(), 0);
+            // a package may be built in the pool already
+            return ForkJoinTask.getPool() == pool ? task.invoke() : pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw new InstallationDefException("Failed to scan modules directory " + modulesDir.toAbsolutePath(), e.getCause());
+        }
+    }
+
+    /**
+     * Resolves the directories of the modules by their names and slots without
+     * scanning the rest of the modules directory, optionally following their
+     * dependencies read from module.xml, transitively. The modules are resolved
+     * in parallel. Dependencies that are not found in the directory are
+     * skipped as they may be provided by another layer or feature pack.
+     * The module directories, the directories listed and, if the dependencies
+     * are followed, module.xml files are added to the fingerprint of the context.
+     *
+     * @param ctx  build context
+     * @param modulesDir  modules directory
+     * @param modules  modules to resolve
+     * @param followDependencies  whether to also resolve the dependencies
+     * @return  the resolved modules sorted by their directory path
+     * @throws InstallationDefException  if a module is not found or in case of a failure
+     */
+    static List<Module> resolve(final DefBuildContext ctx, final Path modulesDir, List<ModuleXmlParser.ModuleRef> modules,
+            final boolean followDependencies) throws InstallationDefException {
+        final Set<String> visited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Queue<Module> resolved = new ConcurrentLinkedQueue<Module>();
+        final List<DefBuildContext.Job<Void>> jobs = new ArrayList<DefBuildContext.Job<Void>>(modules.size());
+        for(final ModuleXmlParser.ModuleRef module : modules) {
+            if(visited.add(module.toString())) {
+                jobs.add(new DefBuildContext.Job<Void>() {
+                    @Override
+                    public Void run() throws InstallationDefException {
+                        resolve(ctx, modulesDir, module, true, followDependencies, visited, resolved);
+                        return null;
+                    }
+                });
+            }
+        }
+        ctx.invokeAll(jobs);
+        final List<Module> result = new ArrayList<Module>(resolved);
+        Collections.sort(result, new Comparator<Module>() {
+            @Override
+            public int compare(Module o1, Module o2) {
+                return o1.dir.toString().compareTo(o2.dir.toString());
+            }
+        });
+        return result;
+    }
+
+    private static void resolve(final DefBuildContext ctx, final Path modulesDir, ModuleXmlParser.ModuleRef module, boolean required,
+            final boolean followDependencies, final Set<String> visited, final Queue<Module> resolved) throws InstallationDefException {
+        final List<String> path = Arrays.asList(module.getName().split("\\."));
+        Path dir = modulesDir;
+        for(String part : path) {
+            dir = dir.resolve(part);
+        }
+        dir = dir.resolve(module.getSlot());
+        final Path moduleXml = dir.resolve(MODULE_XML);
+        if(!Files.isRegularFile(moduleXml)) {
+            if(required) {
+                throw new InstallationDefException("Module " + module + " not found in " + modulesDir.toAbsolutePath());
+            }
+            return;
+        }
+        final List<String> content = new ArrayList<String>();
+        final List<ModuleXmlParser.ModuleRef> dependencies;
+        try {
+            ctx.addFingerprint(dir);
+            addContent(ctx, list(ctx, dir), "", content);
+            ctx.addFingerprint(moduleXml);
+            dependencies = ModuleXmlParser.parseDependencies(moduleXml);
+        } catch (UncheckedIOException e) {
+            throw new InstallationDefException("Failed to read module directory " + dir.toAbsolutePath(), e.getCause());
+        } catch (IOException e) {
+            throw new InstallationDefException("Failed to read module " + module, e);
+        }
+        resolved.add(new Module(path, dir, content, dependencies));
+        if(!followDependencies) {
+            return;
+        }
+        final List<DefBuildContext.Job<Void>> jobs = new ArrayList<DefBuildContext.Job<Void>>();
+        for(final ModuleXmlParser.ModuleRef dependency : dependencies) {
+            // optional dependencies are not package dependencies, selecting the module doesn't bring them in
+            if(dependency.isOptional()) {
+                continue;
+            }
+            if(visited.add(dependency.toString())) {
+                jobs.add(new DefBuildContext.Job<Void>() {
+                    @Override
+                    public Void run() throws InstallationDefException {
+                        resolve(ctx, modulesDir, dependency, false, true, visited, resolved);
+                        return null;
+                    }
+                });
+            }
+        }
+        ctx.invokeAll(jobs);
+    }
+
+    private static class ScanTask extends RecursiveTask<List<Module>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final DefBuildContext ctx;
+        private final Path dir;
+        private final List<String> path;
+        private final int depth;
+
+        ScanTask(DefBuildContext ctx, Path dir, List<String> path, int depth) {
+            this.ctx = ctx;
+            this.dir = dir;
+            this.path = path;
+            this.depth = depth;
+        }
+
+        @Override
+        protected List<Module> compute() {
+            final List<Child> children = list(ctx, dir);
+            if(depth > 1) {
+                for(Child child : children) {
+                    if(!child.directory && MODULE_XML.equals(child.name)) {
+                        final List<String> content = new ArrayList<String>();
+                        addContent(ctx, children, "", content);
+                        ctx.addFingerprint(child.path, child.lastModified);
+                        final List<ModuleXmlParser.ModuleRef> dependencies;
+                        try {
+                            dependencies = ModuleXmlParser.parseDependencies(child.path);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return Collections.singletonList(new Module(path, dir, content, dependencies));
+                    }
+                }
+            }
+            final List<String> childPath;
+            if(depth == 0) {
+                childPath = path;
+            } else {
+                childPath = new ArrayList<String>(path.size() + 1);
+                childPath.addAll(path);
+                childPath.add(DefBuildContext.getName(dir));
+            }
+            final List<ScanTask> tasks = new ArrayList<ScanTask>();
+            for(Child child : children) {
+                if(child.directory) {
+                    tasks.add(new ScanTask(ctx, child.path, childPath, depth + 1));
+                }
+            }
+            switch(tasks.size()) {
+                case 0:
+                    return Collections.emptyList();
+                case 1:
+                    return tasks.get(0).compute();
+                default:
+                    invokeAll(tasks);
+                    final List<Module> modules = new ArrayList<Module>();
+                    for(ScanTask task : tasks) {
+                        modules.addAll(task.join());
+                    }
+                    return modules;
+            }
+        }
+    }
+
+    private static void addContent(DefBuildContext ctx, List<Child> children, String relativePath, List<String> content) {
+        for(Child child : children) {
+            if(child.directory) {
+                addContent(ctx, list(ctx, child.path), relativePath + child.name + '/', content);
+            } else {
+                content.add(relativePath + child.name);
+            }
+        }
+    }
+
+    /**
+     * Lists the directory adding its child directories to the fingerprint.
+     */
+    private static List<Child> list(DefBuildContext ctx, Path dir) {
+        final List<Child> children = new ArrayList<Child>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for(Path child : stream) {
+                final Child c = new Child(child, Files.readAttributes(child, BasicFileAttributes.class));
+                if(c.directory) {
+                    ctx.addFingerprint(c.path, c.lastModified);
+                }
+                children.add(c);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(children, BY_NAME);
+        return children;
+    }
+}
@@ -42,9 +42,7 @@ public class WFFeaturePackDefBuilder {
     private final String groupId;
     private String artifactId;
     private String version;
-
-    private FeaturePackDef.FeaturePackDefBuilder fpBuilder;
-
+    private ModuleTrimmer trimmer;
 
     public WFFeaturePackDefBuilder(String groupId, String artifactId, String version, WFInstallationDefBuilder wfBuilder) {
         assert groupId != null : "groupId is null";
@@ -66,37 +64,46 @@ public class WFFeaturePackDefBuilder {
         }
     }
 
+    /**
+     * Trimmer the module packages of the feature pack are trimmed with once it is built.
+     *
+     * @param trimmer  module trimmer or null to keep all the modules
+     */
+    public void setModuleTrimmer(ModuleTrimmer trimmer) {
+        this.trimmer = trimmer;
+    }
+
     public WFInstallationDefBuilder getInstallationBuilder() {
         return wfBuilder;
     }
 
-    public FeaturePackDef build(DefBuildContext ctx) throws InstallationDefException {
-        fpBuilder = FeaturePackDef.builder();
-        ctx.fpBuilder = this;
-        try {
-            for(WFPackageDefBuilder pkgBuilder : packages) {
-                fpBuilder.addGroup(pkgBuilder.build(ctx));
-            }
-            return fpBuilder.setGAV(new GAV(groupId, artifactId, version)).build();
-        } finally {
-            fpBuilder = null;
-            ctx.fpBuilder = null;
+    /**
+     * Builds the feature pack with its packages built concurrently
+     * and its modules trimmed if a trimmer has been set.
+     */
+    FeaturePackDef build(final DefBuildContext ctx) throws InstallationDefException {
+        final FeaturePackSink fpSink = new FeaturePackSink(artifactId == null);
+        final List<DefBuildContext.Job<PackageDef>> jobs = new ArrayList<DefBuildContext.Job<PackageDef>>(packages.size());
+        for(final WFPackageDefBuilder pkgBuilder : packages) {
+            jobs.add(new DefBuildContext.Job<PackageDef>() {
+                @Override
+                public PackageDef run() throws InstallationDefException {
+                    return pkgBuilder.build(ctx, fpSink);
+                }
+            });
         }
-    }
-
-    void setArtifactId(String artifactId) {
-        this.artifactId = artifactId;
-    }
-
-    String getArtifactId() {
-        return artifactId;
-    }
-
-    void setVersion(String version) {
-        this.version = version;
-    }
-
-    void addModulePackage(PackageDef module) {
-        fpBuilder.addGroup(module);
+        final FeaturePackDef.FeaturePackDefBuilder fpBuilder = FeaturePackDef.builder();
+        for(PackageDef pkg : ctx.invokeAll(jobs)) {
+            fpBuilder.addGroup(pkg);
+        }
+        for(PackageDef module : fpSink.getModulePackages()) {
+            fpBuilder.addGroup(module);
+        }
+        if(fpSink.getProductArtifactId() != null) {
+            artifactId = fpSink.getProductArtifactId();
+            version = fpSink.getProductVersion();
+        }
+        final FeaturePackDef fpDef = fpBuilder.setGAV(new GAV(groupId, artifactId, version)).build();
+        return trimmer == null ? fpDef : trimmer.trim(fpDef);
     }
 }
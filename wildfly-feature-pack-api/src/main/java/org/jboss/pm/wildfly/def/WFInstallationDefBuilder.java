@@ -23,13 +23,23 @@
 package org.jboss.pm.wildfly.def;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
+import org.jboss.pm.build.CompressionPolicy;
+import org.jboss.pm.def.FeaturePackDef;
 import org.jboss.pm.def.InstallationDef;
 import org.jboss.pm.def.InstallationDefBuilder;
 import org.jboss.pm.def.InstallationDefException;
+import org.jboss.pm.def.InstallationDefSnapshot;
 
 /**
  *
@@ -42,6 +52,8 @@ public class WFInstallationDefBuilder {
     }
 
     private String modulesPath;
+    private CompressionPolicy compressionPolicy;
+    private int scanThreads = Runtime.getRuntime().availableProcessors();
     private List<WFFeaturePackDefBuilder> featurePacks = Collections.emptyList();
 
     private WFInstallationDefBuilder() {
@@ -54,6 +66,27 @@ public class WFInstallationDefBuilder {
         this.modulesPath = modulesPath;
     }
 
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        if(this.compressionPolicy != null) {
+            throw new IllegalStateException("Compression policy has already been set");
+        }
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    /**
+     * Number of threads scanning the directories of the installation and
+     * building the feature packs and their packages. The default is the number
+     * of available processors. With 1 everything is built on a single thread.
+     *
+     * @param scanThreads  number of scanning threads
+     */
+    public void setScanThreads(int scanThreads) {
+        if(scanThreads < 1) {
+            throw new IllegalArgumentException("scanThreads must be greater than 0: " + scanThreads);
+        }
+        this.scanThreads = scanThreads;
+    }
+
     public void addFeaturePack(WFFeaturePackDefBuilder fpBuilder) {
         switch(featurePacks.size()) {
             case 0:
@@ -70,13 +103,100 @@ public class WFInstallationDefBuilder {
         return modulesPath;
     }
 
+    /**
+     * Compression policy configured for the feature pack archives
+     * or null if none was configured.
+     */
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
     public InstallationDef build(File installationHome) throws InstallationDefException {
+        return build(installationHome.toPath());
+    }
+
+    /**
+     * Builds the installation definition scanning the installation
+     * at the path which may also belong to a ZIP file system,
+     * e.g. the home directory inside a distribution archive.
+     *
+     * @param installationHome  installation home directory
+     * @return  installation definition
+     * @throws InstallationDefException  in case of a failure
+     */
+    public InstallationDef build(Path installationHome) throws InstallationDefException {
+        return build(installationHome, null);
+    }
+
+    /**
+     * Loads the installation definition from the snapshot unless the key of the
+     * snapshot differs or a directory or file scanned to build the definition
+     * has been modified since, in which case the definition is built scanning
+     * the installation and the snapshot is written.
+     *
+     * @param installationHome  installation home directory
+     * @param snapshot  snapshot file
+     * @param key  key of the configuration the definition is built with, e.g. a digest of it
+     * @return  installation definition
+     * @throws InstallationDefException  in case of a failure
+     */
+    public InstallationDef build(final Path installationHome, File snapshot, byte[] key) throws InstallationDefException {
+        InstallationDef def;
+        try {
+            def = InstallationDefSnapshot.read(snapshot, key, new InstallationDefSnapshot.FingerprintCheck() {
+                @Override
+                public boolean matches(Map<String, Long> fingerprint) throws IOException {
+                    for(Map.Entry<String, Long> entry : fingerprint.entrySet()) {
+                        try {
+                            if(Files.getLastModifiedTime(installationHome.resolve(entry.getKey())).toMillis() != entry.getValue()) {
+                                return false;
+                            }
+                        } catch (NoSuchFileException e) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            throw new InstallationDefException("Failed to read " + snapshot.getAbsolutePath(), e);
+        }
+        if(def != null) {
+            return def;
+        }
+        final Map<String, Long> fingerprint = new HashMap<String, Long>();
+        def = build(installationHome, fingerprint);
+        try {
+            InstallationDefSnapshot.write(snapshot, key, fingerprint, def);
+        } catch (IOException e) {
+            throw new InstallationDefException("Failed to write " + snapshot.getAbsolutePath(), e);
+        }
+        return def;
+    }
 
-        final DefBuildContext ctx = new DefBuildContext(installationHome, modulesPath);
-        final InstallationDefBuilder builder = InstallationDefBuilder.newInstance();
-        for(WFFeaturePackDefBuilder fpBuilder : featurePacks) {
-            builder.addFeaturePack(fpBuilder.build(ctx));
+    private InstallationDef build(Path installationHome, Map<String, Long> fingerprint) throws InstallationDefException {
+        final ForkJoinPool scanPool = new ForkJoinPool(scanThreads);
+        try {
+            final DefBuildContext ctx = new DefBuildContext(installationHome, modulesPath, scanPool);
+            final List<DefBuildContext.Job<FeaturePackDef>> jobs = new ArrayList<DefBuildContext.Job<FeaturePackDef>>(featurePacks.size());
+            for(final WFFeaturePackDefBuilder fpBuilder : featurePacks) {
+                jobs.add(new DefBuildContext.Job<FeaturePackDef>() {
+                    @Override
+                    public FeaturePackDef run() throws InstallationDefException {
+                        return fpBuilder.build(ctx);
+                    }
+                });
+            }
+            final InstallationDefBuilder builder = InstallationDefBuilder.newInstance();
+            for(FeaturePackDef fpDef : ctx.invokeAll(jobs)) {
+                builder.addFeaturePack(fpDef);
+            }
+            if(fingerprint != null) {
+                fingerprint.putAll(ctx.getFingerprint());
+            }
+            return builder.build();
+        } finally {
+            scanPool.shutdownNow();
         }
-        return builder.build();
     }
 }
\ No newline at end of file
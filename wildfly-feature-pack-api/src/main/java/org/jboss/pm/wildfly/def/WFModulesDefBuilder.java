@@ -22,9 +22,11 @@
 
 package org.jboss.pm.wildfly.def;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -47,67 +49,77 @@ public class WFModulesDefBuilder {
     private static final String RELEASE_VERSION = "JBoss-Product-Release-Version";
 
     private final String relativeDir;
-    private List<String> names = Collections.emptyList();
+    private List<ModuleXmlParser.ModuleRef> names = Collections.emptyList();
+    private boolean followDependencies;
 
     public WFModulesDefBuilder(String relativeDir) {
         this.relativeDir = relativeDir;
     }
 
     public void addModule(String name) {
+        addModule(name, null);
+    }
+
+    /**
+     * Selects a module instead of all the modules found in the directory.
+     *
+     * @param name  module name
+     * @param slot  module slot or null for the main slot
+     */
+    public void addModule(String name, String slot) {
+        assert name != null : "name is null";
+        final ModuleXmlParser.ModuleRef module = new ModuleXmlParser.ModuleRef(name, slot, false);
         switch(names.size()) {
             case 0:
-                names = Collections.singletonList(name);
+                names = Collections.singletonList(module);
                 break;
             case 1:
-                names = new ArrayList<String>(names);
+                names = new ArrayList<ModuleXmlParser.ModuleRef>(names);
             default:
-                names.add(name);
+                names.add(module);
         }
     }
 
+    /**
+     * Whether the dependencies of the selected modules declared in their module.xml
+     * should be included too, transitively. It has no effect if no modules are selected.
+     *
+     * @param followDependencies  whether to include the dependencies of the selected modules
+     */
+    public void setFollowDependencies(boolean followDependencies) {
+        this.followDependencies = followDependencies;
+    }
+
     void processModules(DefBuildContext ctx) throws InstallationDefException {
-        final File modulesDir;
+        final Path modulesDir;
+        final String modulesPath;
         if(relativeDir != null) {
-            modulesDir = new File(ctx.getHomeDir(), relativeDir);
+            modulesDir = ctx.getHomeDir().resolve(relativeDir);
+            modulesPath = relativeDir;
         } else {
             modulesDir = ctx.getModulesDir();
+            modulesPath = DefBuildContext.getRelativePath(ctx.getHomeDir(), modulesDir);
+        }
+        if(!Files.exists(modulesDir)) {
+            throw new InstallationDefException("Modules directory " + modulesDir.toAbsolutePath() + " does not exist.");
         }
+        final List<ModulesScanner.Module> modules;
         if(names.isEmpty()) {
-            if(!modulesDir.exists()) {
-                throw new InstallationDefException("Modules directory " + modulesDir.getAbsolutePath() + " does not exist.");
-            }
             // all
-            final List<String> path = new ArrayList<String>();
-            for(File dir : modulesDir.listFiles()) {
-                if(dir.isDirectory()) {
-                    path.add(dir.getName());
-                    for(File child : dir.listFiles()) {
-                        if(child.isDirectory()) {
-                            processModules(ctx, relativeDir, path, child);
-                        }
-                    }
-                    path.remove(path.size() - 1);
-                }
-            }
+            modules = ModulesScanner.scan(ctx, modulesDir);
         } else {
-            // TODO preselected
+            // only the preselected ones are looked up, the rest of the directory is not scanned
+            modules = ModulesScanner.resolve(ctx, modulesDir, names, followDependencies);
+        }
+        for(ModulesScanner.Module module : modules) {
+            processModule(ctx, modulesPath, module);
         }
     }
 
-    private void processModules(DefBuildContext ctx, String modulesPath, List<String> path, File dir) throws InstallationDefException {
-
-        final File moduleXml = new File(dir, "module.xml");
-        if(!moduleXml.exists()) {
-            for(File child : dir.listFiles()) {
-                if (child.isDirectory()) {
-                    path.add(dir.getName());
-                    processModules(ctx, modulesPath, path, child);
-                    path.remove(path.size() - 1);
-                }
-            }
-            return;
-        }
+    private void processModule(DefBuildContext ctx, String modulesPath, ModulesScanner.Module module) throws InstallationDefException {
 
+        final List<String> path = module.getPath();
+        final Path dir = module.getDir();
         final StringBuilder moduleName = new StringBuilder();
         final StringBuilder contentPath = new StringBuilder(modulesPath).append('/');
         moduleName.append(path.get(0));
@@ -117,35 +129,43 @@ public class WFModulesDefBuilder {
             moduleName.append('.').append(part);
             contentPath.append('/').append(part);
         }
-        if(ctx.fpBuilder.getArtifactId() == null && PRODUCT_MODULE.equals(path)) {
-            ctx.fpBuilder.setArtifactId(dir.getName());
-            final File manifest = new File(dir, "dir/META-INF/MANIFEST.MF");
+        if(PRODUCT_MODULE.equals(path) && ctx.fpSink.isProductRequired()) {
+            final Path manifest = dir.resolve("dir/META-INF/MANIFEST.MF");
             final Properties props = new Properties();
-            FileReader reader = null;
+            Reader reader = null;
             try {
-                reader = new FileReader(manifest);
+                reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8);
                 props.load(reader);
+                ctx.addFingerprint(manifest);
             } catch(IOException e) {
-                throw new InstallationDefException("Failed to read product info from " + manifest.getAbsolutePath(), e);
+                throw new InstallationDefException("Failed to read product info from " + manifest.toAbsolutePath(), e);
             } finally {
                 IoUtils.safeClose(reader);
             }
-            ctx.fpBuilder.setVersion(props.getProperty(RELEASE_VERSION));
+            ctx.fpSink.setProduct(DefBuildContext.getName(dir), props.getProperty(RELEASE_VERSION));
         }
-        moduleName.append('.').append(dir.getName()); // adding the slot to the name (hibernate modules in wildfly)
-        final PackageDefBuilder moduleBuilder = PackageDef.packageBuilder(moduleName.toString());
-        addContent(moduleBuilder, dir, contentPath.toString());
-        ctx.fpBuilder.addModulePackage(moduleBuilder.build());
-        ctx.pkgBuilder.addDependency(moduleName.toString());
-    }
-
-    private void addContent(PackageDefBuilder builder, File f, String relativePath) {
-        if(f.isDirectory()) {
-            for(File c : f.listFiles()) {
-                addContent(builder, c, relativePath + '/' + f.getName());
+        moduleName.append('.').append(DefBuildContext.getName(dir)); // adding the slot to the name (hibernate modules in wildfly)
+        // the name is shared by the module package and the dependency on it
+        final String name = moduleName.toString();
+        final PackageDefBuilder moduleBuilder = PackageDef.packageBuilder(name, ctx.getPathPool());
+        final String moduleDir = contentPath.append('/').append(DefBuildContext.getName(dir)).append('/').toString();
+        for(String content : module.getContent()) {
+            moduleBuilder.addContentPath(moduleDir + content);
+        }
+        // the optional dependencies are left out, so that a selected module does not drag them in
+        for(ModuleXmlParser.ModuleRef dependency : module.getDependencies()) {
+            if(!dependency.isOptional()) {
+                moduleBuilder.addDependency(getPackageName(dependency));
             }
-        } else {
-            builder.addContentPath(relativePath + '/' + f.getName());
         }
+        ctx.fpSink.addModulePackage(moduleBuilder.build());
+        ctx.pkgBuilder.addDependency(name);
+    }
+
+    /**
+     * Name of the package of the module, i.e. the module name followed by the slot.
+     */
+    static String getPackageName(ModuleXmlParser.ModuleRef module) {
+        return module.getName() + '.' + module.getSlot();
     }
 }
@@ -22,14 +22,14 @@
 
 package org.jboss.pm.wildfly.def;
 
-import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.jboss.pm.def.InstallationDefException;
 import org.jboss.pm.def.PackageDef;
-import org.jboss.pm.def.PackageDef.PackageDefBuilder;
 
 /**
  *
@@ -82,30 +82,35 @@ public class WFPackageDefBuilder {
         }
     }
 
-    public PackageDef build(DefBuildContext ctx) throws InstallationDefException {
-        ctx.pkgBuilder = PackageDef.packageBuilder(name);
-        try {
+    /**
+     * Builds the package with its own context, so that packages
+     * can be built concurrently. The module packages are added
+     * to the feature pack sink.
+     */
+    PackageDef build(DefBuildContext fpCtx, FeaturePackSink fpSink) throws InstallationDefException {
+        final DefBuildContext ctx = fpCtx.forPackage(fpSink, PackageDef.packageBuilder(name, fpCtx.getPathPool()));
         if(!modules.isEmpty()) {
             for(WFModulesDefBuilder modulesBuilder : modules) {
                 modulesBuilder.processModules(ctx);
             }
         }
         for(String relativePath : relativePaths) {
-            final File f = new File(ctx.getHomeDir(), relativePath);
-            if(!f.exists()) {
-                throw new InstallationDefException("Failed to locate " + f.getAbsolutePath());
+            final Path f = ctx.getHomeDir().resolve(relativePath);
+            if(!Files.exists(f)) {
+                throw new InstallationDefException("Failed to locate " + f.toAbsolutePath());
             }
-            if(f.isDirectory()) {
-                final File[] children = f.listFiles();
-                if(children.length == 0) {
+            if(Files.isDirectory(f)) {
+                final List<Path> children = ctx.listChildren(f);
+                if(children.isEmpty()) {
                     ctx.pkgBuilder.addContentPath(relativePath);
                 } else {
-                    for (File c : children) {
-                        addContent(ctx.pkgBuilder, c, f.getName());
+                    for (Path c : children) {
+                        addContent(ctx, c, DefBuildContext.getName(f));
                     }
                 }
 
             } else {
+                ctx.addFingerprint(f);
                 ctx.pkgBuilder.addContentPath(relativePath);
             }
         }
@@ -113,18 +118,15 @@ public class WFPackageDefBuilder {
             ctx.pkgBuilder.addDependency(packageRef);
         }
         return ctx.pkgBuilder.build();
-        } finally {
-            ctx.pkgBuilder = null;
-        }
     }
 
-    private void addContent(PackageDefBuilder builder, File f, String relativePath) {
-        if(f.isDirectory()) {
-            for(File c : f.listFiles()) {
-                addContent(builder, c, relativePath + '/' + f.getName());
+    private void addContent(DefBuildContext ctx, Path f, String relativePath) throws InstallationDefException {
+        if(Files.isDirectory(f)) {
+            for(Path c : ctx.listChildren(f)) {
+                addContent(ctx, c, relativePath + '/' + DefBuildContext.getName(f));
             }
         } else {
-            builder.addContentPath(relativePath + '/' + f.getName());
+            ctx.pkgBuilder.addContentPath(relativePath + '/' + DefBuildContext.getName(f));
         }
     }
 }
@@ -32,7 +32,10 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 
+import org.jboss.pm.build.CompressionPolicy;
+import org.jboss.pm.build.DefaultCompressionPolicy;
 import org.jboss.pm.util.ParsingUtils;
+import org.jboss.pm.wildfly.def.ModuleTrimmer;
 import org.jboss.pm.wildfly.def.WFFeaturePackDefBuilder;
 import org.jboss.pm.wildfly.def.WFInstallationDefBuilder;
 import org.jboss.pm.wildfly.def.WFModulesDefBuilder;
@@ -50,6 +53,7 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
 
     enum Element {
 
+        COMPRESSION("compression"),
         FEATURE_PACK("feature-pack"),
         FEATURE_PACKS("feature-packs"),
         INSTALLATION("installation"),
@@ -58,6 +62,8 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
         PACKAGE("package"),
         PACKAGE_REF("package-ref"),
         PATH("path"),
+        STORE("store"),
+        TRIM("trim"),
 
         // default unknown element
         UNKNOWN(null);
@@ -67,6 +73,7 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
 
         static {
             final Map<QName, Element> elementsMap = new HashMap<QName, Element>();
+            elementsMap.put(new QName(NAMESPACE_1_0, Element.COMPRESSION.getLocalName()), Element.COMPRESSION);
             elementsMap.put(new QName(NAMESPACE_1_0, Element.FEATURE_PACK.getLocalName()), Element.FEATURE_PACK);
             elementsMap.put(new QName(NAMESPACE_1_0, Element.FEATURE_PACKS.getLocalName()), Element.FEATURE_PACKS);
             elementsMap.put(new QName(NAMESPACE_1_0, Element.INSTALLATION.getLocalName()), Element.INSTALLATION);
@@ -75,6 +82,8 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
             elementsMap.put(new QName(NAMESPACE_1_0, Element.PACKAGE.getLocalName()), Element.PACKAGE);
             elementsMap.put(new QName(NAMESPACE_1_0, Element.PACKAGE_REF.getLocalName()), Element.PACKAGE_REF);
             elementsMap.put(new QName(NAMESPACE_1_0, Element.PATH.getLocalName()), Element.PATH);
+            elementsMap.put(new QName(NAMESPACE_1_0, Element.STORE.getLocalName()), Element.STORE);
+            elementsMap.put(new QName(NAMESPACE_1_0, Element.TRIM.getLocalName()), Element.TRIM);
             elements = elementsMap;
         }
 
@@ -108,9 +117,15 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
     enum Attribute {
 
         ARTIFACT_ID("artifact-id"),
+        EXTENSION("extension"),
+        FOLLOW_DEPENDENCIES("follow-dependencies"),
         GROUP_ID("group-id"),
+        LEVEL("level"),
         NAME("name"),
         RELATIVE("relative"),
+        SLOT("slot"),
+        STORE_BELOW("store-below"),
+        STORE_RATIO("store-ratio"),
         VERSION("version"),
         // default unknown attribute
         UNKNOWN(null);
@@ -120,9 +135,15 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
         static {
             Map<QName, Attribute> attributesMap = new HashMap<QName, Attribute>();
             attributesMap.put(new QName(ARTIFACT_ID.getLocalName()), ARTIFACT_ID);
+            attributesMap.put(new QName(EXTENSION.getLocalName()), EXTENSION);
+            attributesMap.put(new QName(FOLLOW_DEPENDENCIES.getLocalName()), FOLLOW_DEPENDENCIES);
             attributesMap.put(new QName(GROUP_ID.getLocalName()), GROUP_ID);
+            attributesMap.put(new QName(LEVEL.getLocalName()), LEVEL);
             attributesMap.put(new QName(NAME.getLocalName()), NAME);
             attributesMap.put(new QName(RELATIVE.getLocalName()), RELATIVE);
+            attributesMap.put(new QName(SLOT.getLocalName()), SLOT);
+            attributesMap.put(new QName(STORE_BELOW.getLocalName()), STORE_BELOW);
+            attributesMap.put(new QName(STORE_RATIO.getLocalName()), STORE_RATIO);
             attributesMap.put(new QName(VERSION.getLocalName()), VERSION);
             attributes = attributesMap;
         }
@@ -167,6 +188,9 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
                         case FEATURE_PACKS:
                             parseFeaturePacks(reader, wfBuilder);
                             break;
+                        case COMPRESSION:
+                            wfBuilder.setCompressionPolicy(parseCompression(reader));
+                            break;
                         default:
                             throw ParsingUtils.unexpectedContent(reader);
                     }
@@ -202,6 +226,75 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
         return path;
     }
 
+    private CompressionPolicy parseCompression(XMLExtendedStreamReader reader) throws XMLStreamException {
+        final DefaultCompressionPolicy.Builder builder = DefaultCompressionPolicy.builder();
+        final int count = reader.getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            final Attribute attribute = Attribute.of(reader.getAttributeName(i));
+            final String value = reader.getAttributeValue(i);
+            try {
+                switch (attribute) {
+                    case LEVEL:
+                        builder.setLevel(Integer.parseInt(value));
+                        break;
+                    case STORE_BELOW:
+                        builder.setStoreBelow(Long.parseLong(value));
+                        break;
+                    case STORE_RATIO:
+                        builder.setStoreRatio(Double.parseDouble(value));
+                        break;
+                    default:
+                        throw ParsingUtils.unexpectedContent(reader);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new XMLStreamException("Invalid value '" + value + "' of " + attribute.getLocalName(), reader.getLocation(), e);
+            }
+        }
+
+        while (reader.hasNext()) {
+            switch (reader.nextTag()) {
+                case XMLStreamConstants.END_ELEMENT: {
+                    return builder.build();
+                }
+                case XMLStreamConstants.START_ELEMENT: {
+                    final Element element = Element.of(reader.getName());
+                    switch (element) {
+                        case STORE:
+                            builder.addStoredExtension(parseExtension(reader));
+                            break;
+                        default:
+                            throw ParsingUtils.unexpectedContent(reader);
+                    }
+                    break;
+                }
+                default: {
+                    throw ParsingUtils.unexpectedContent(reader);
+                }
+            }
+        }
+        throw ParsingUtils.endOfDocument(reader.getLocation());
+    }
+
+    private String parseExtension(final XMLExtendedStreamReader reader) throws XMLStreamException {
+        final int count = reader.getAttributeCount();
+        String extension = null;
+        for (int i = 0; i < count; i++) {
+            final Attribute attribute = Attribute.of(reader.getAttributeName(i));
+            switch (attribute) {
+                case EXTENSION:
+                    extension = reader.getAttributeValue(i);
+                    break;
+                default:
+                    throw ParsingUtils.unexpectedContent(reader);
+            }
+        }
+        if (extension == null) {
+            throw ParsingUtils.missingAttributes(reader.getLocation(), Collections.singleton(Attribute.EXTENSION));
+        }
+        ParsingUtils.parseNoContent(reader);
+        return extension;
+    }
+
     private void parseFeaturePacks(XMLExtendedStreamReader reader, WFInstallationDefBuilder wfBuilder) throws XMLStreamException {
         if(reader.getAttributeCount() != 0) {
             throw ParsingUtils.unexpectedContent(reader);
@@ -271,6 +364,9 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
                         case PACKAGE:
                             parsePackage(reader, fpBuilder);
                             break;
+                        case TRIM:
+                            fpBuilder.setModuleTrimmer(parseTrim(reader));
+                            break;
                         default:
                             throw ParsingUtils.unexpectedContent(reader);
                     }
@@ -313,7 +409,7 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
                     final Element element = Element.of(reader.getName());
                     switch (element) {
                         case MODULES:
-                            pkgBuilder.addModule(new WFModulesDefBuilder(parseRelativePath(reader)));
+                            pkgBuilder.addModule(parseModules(reader));
                             break;
                         case PATH:
                             pkgBuilder.addRelativePath(parseRelativePath(reader));
@@ -333,6 +429,131 @@ class WFInstallationDefParser10 implements XMLElementReader<WFInstallationDefBui
         }
     }
 
+    private WFModulesDefBuilder parseModules(final XMLExtendedStreamReader reader) throws XMLStreamException {
+        final int count = reader.getAttributeCount();
+        String relative = null;
+        boolean followDependencies = false;
+        for (int i = 0; i < count; i++) {
+            final Attribute attribute = Attribute.of(reader.getAttributeName(i));
+            switch (attribute) {
+                case RELATIVE:
+                    relative = reader.getAttributeValue(i);
+                    break;
+                case FOLLOW_DEPENDENCIES:
+                    followDependencies = Boolean.parseBoolean(reader.getAttributeValue(i));
+                    break;
+                default:
+                    throw ParsingUtils.unexpectedContent(reader);
+            }
+        }
+        final WFModulesDefBuilder modulesBuilder = new WFModulesDefBuilder(relative);
+        modulesBuilder.setFollowDependencies(followDependencies);
+
+        while (reader.hasNext()) {
+            switch (reader.nextTag()) {
+                case XMLStreamConstants.END_ELEMENT: {
+                    return modulesBuilder;
+                }
+                case XMLStreamConstants.START_ELEMENT: {
+                    final Element element = Element.of(reader.getName());
+                    switch (element) {
+                        case MODULE:
+                            parseModule(reader, modulesBuilder);
+                            break;
+                        default:
+                            throw ParsingUtils.unexpectedContent(reader);
+                    }
+                    break;
+                }
+                default: {
+                    throw ParsingUtils.unexpectedContent(reader);
+                }
+            }
+        }
+        throw ParsingUtils.endOfDocument(reader.getLocation());
+    }
+
+    private void parseModule(final XMLExtendedStreamReader reader, WFModulesDefBuilder modulesBuilder) throws XMLStreamException {
+        final int count = reader.getAttributeCount();
+        String name = null;
+        String slot = null;
+        for (int i = 0; i < count; i++) {
+            final Attribute attribute = Attribute.of(reader.getAttributeName(i));
+            switch (attribute) {
+                case NAME:
+                    name = reader.getAttributeValue(i);
+                    break;
+                case SLOT:
+                    slot = reader.getAttributeValue(i);
+                    break;
+                default:
+                    throw ParsingUtils.unexpectedContent(reader);
+            }
+        }
+        if (name == null) {
+            throw ParsingUtils.missingAttributes(reader.getLocation(), Collections.singleton(Attribute.NAME));
+        }
+        ParsingUtils.parseNoContent(reader);
+        modulesBuilder.addModule(name, slot);
+    }
+
+    private ModuleTrimmer parseTrim(final XMLExtendedStreamReader reader) throws XMLStreamException {
+        if(reader.getAttributeCount() != 0) {
+            throw ParsingUtils.unexpectedContent(reader);
+        }
+        final ModuleTrimmer trimmer = new ModuleTrimmer();
+
+        while (reader.hasNext()) {
+            switch (reader.nextTag()) {
+                case XMLStreamConstants.END_ELEMENT: {
+                    if(!trimmer.hasRootModules()) {
+                        throw new XMLStreamException("trim requires at least one module", reader.getLocation());
+                    }
+                    return trimmer;
+                }
+                case XMLStreamConstants.START_ELEMENT: {
+                    final Element element = Element.of(reader.getName());
+                    switch (element) {
+                        case MODULE:
+                            parseRootModule(reader, trimmer);
+                            break;
+                        default:
+                            throw ParsingUtils.unexpectedContent(reader);
+                    }
+                    break;
+                }
+                default: {
+                    throw ParsingUtils.unexpectedContent(reader);
+                }
+            }
+        }
+        throw ParsingUtils.endOfDocument(reader.getLocation());
+    }
+
+    private void parseRootModule(final XMLExtendedStreamReader reader, ModuleTrimmer trimmer) throws XMLStreamException {
+        final int count = reader.getAttributeCount();
+        String name = null;
+        String slot = null;
+        for (int i = 0; i < count; i++) {
+            final Attribute attribute = Attribute.of(reader.getAttributeName(i));
+            switch (attribute) {
+                case NAME:
+                    name = reader.getAttributeValue(i);
+                    break;
+                case SLOT:
+                    slot = reader.getAttributeValue(i);
+                    break;
+                default:
+                    throw ParsingUtils.unexpectedContent(reader);
+            }
+        }
+        if (name == null) {
+            throw ParsingUtils.missingAttributes(reader.getLocation(), Collections.singleton(Attribute.NAME));
+        }
+        ParsingUtils.parseNoContent(reader);
+        trimmer.addRootModule(name, slot);
+    }
+
     private String parseName(final XMLExtendedStreamReader reader) throws XMLStreamException {
         final int count = reader.getAttributeCount();
         String path = null;